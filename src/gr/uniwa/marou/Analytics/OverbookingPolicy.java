@@ -0,0 +1,118 @@
+package gr.uniwa.marou.Analytics;
+
+import gr.uniwa.marou.DAO.TheaterDAO;
+import gr.uniwa.marou.Ledger.BookingEvent;
+import gr.uniwa.marou.Ledger.EventType;
+import gr.uniwa.marou.Ledger.LedgerView;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The OverbookingPolicy lets seat categories be overbooked by the share of their seats that guests have been giving
+ back, so that seats freed by cancellations and no-shows at the last moment are already sold.
+ It is a view of the booking ledger: after every sale, cancellation or capacity change of a category that may be
+ overbooked, it reads the cancellation rate of the category from the SalesAnalytics view, caps it at the ratio
+ configured for the category, and sets the overbook allowance of the category in the DAO to that share of its
+ capacity. The allowance stays 0 until MIN_SEATS_SOLD seats of the category have been sold, so a few early
+ cancellations cannot open the category up to overbooking.
+ The DAO enforces the allowance in the same locked check as the availability, so bookings do no extra work.
+ The SalesAnalytics view must be registered on the ledger before the policy, so that it has counted an event by the
+ time the policy sees it.
+ */
+public class OverbookingPolicy implements LedgerView {
+
+    public static final long MIN_SEATS_SOLD = 50;
+
+    private final TheaterDAO theaterDAO;
+    private final SalesAnalytics salesAnalytics;
+    private final SeatCategories categories;
+    private final double[] maxRatios;
+    private final int[] initialCapacity;
+    private final int[] capacity;
+
+    /**
+     Constructs a new OverbookingPolicy.
+     @param theaterDAO the DAO whose overbook allowances the policy sets
+     @param salesAnalytics the view that tracks the sales and cancellations of every seat category
+     @param capacity the capacity of each seat category before the first event of the ledger
+     @param maxRatios the largest share of its capacity that each seat category may be overbooked by; categories
+     that are missing are never overbooked
+     @throws IllegalArgumentException if a ratio is not at least 0 and below 1
+     */
+    public OverbookingPolicy(TheaterDAO theaterDAO, SalesAnalytics salesAnalytics,
+                             Map<SeatCategory, Integer> capacity, Map<SeatCategory, Double> maxRatios) {
+        this.theaterDAO = theaterDAO;
+        this.salesAnalytics = salesAnalytics;
+        this.categories = theaterDAO.getCategories();
+        this.maxRatios = new double[categories.size()];
+        this.initialCapacity = new int[categories.size()];
+        this.capacity = new int[categories.size()];
+        for (SeatCategory category : categories.all()) {
+            double ratio = maxRatios.getOrDefault(category, 0.0);
+            if (!(ratio >= 0 && ratio < 1)) {
+                throw new IllegalArgumentException("Invalid overbook ratio for " + category.code() + ": " + ratio);
+            }
+            this.maxRatios[category.id()] = ratio;
+            this.initialCapacity[category.id()] = capacity.getOrDefault(category, 0);
+        }
+        reset();
+    }
+
+    @Override
+    public void apply(BookingEvent event) {
+        int zone = event.category().id();
+        if (maxRatios[zone] == 0 || event.type() == EventType.WAITLISTED) {
+            return;
+        }
+        if (event.type() == EventType.CAPACITY_CHANGED) {
+            capacity[zone] += event.numberOfSeats();
+        }
+        update(event.category());
+    }
+
+    @Override
+    public void reset() {
+        System.arraycopy(initialCapacity, 0, capacity, 0, capacity.length);
+        for (SeatCategory category : categories.all()) {
+            if (maxRatios[category.id()] > 0) {
+                theaterDAO.updateOverbookAllowance(category, 0);
+            }
+        }
+    }
+
+    /**
+     Parses the overbook ratios of a comma-separated list of code:ratio pairs, e.g. "SA:0.10,CE:0.05".
+     @param categories the seat categories the codes refer to
+     @param ratios the list of pairs
+     @return the ratio of each listed seat category
+     @throws IllegalArgumentException if a pair is malformed, a code is unknown or a ratio is not a number
+     */
+    public static Map<SeatCategory, Double> parseRatios(SeatCategories categories, String ratios) {
+        Map<SeatCategory, Double> result = new LinkedHashMap<>();
+        for (String pair : ratios.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid overbook ratio, expected code:ratio: " + pair);
+            }
+            result.put(categories.byCode(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+        }
+        return result;
+    }
+
+    /**
+     Sets the overbook allowance of a seat category to the share of its capacity that has been cancelled so far,
+     capped at the ratio configured for it.
+     */
+    private void update(SeatCategory category) {
+        int zone = category.id();
+        double ratio = salesAnalytics.seatsSold(category) < MIN_SEATS_SOLD ? 0
+                : Math.min(maxRatios[zone], salesAnalytics.cancellationRate(category));
+        int allowance = (int) (Math.max(0, capacity[zone]) * ratio);
+        if (allowance != theaterDAO.getOverbookAllowance(category)) {
+            theaterDAO.updateOverbookAllowance(category, allowance);
+        }
+    }
+}
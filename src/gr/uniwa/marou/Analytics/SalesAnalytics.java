@@ -0,0 +1,193 @@
+package gr.uniwa.marou.Analytics;
+
+import gr.uniwa.marou.Ledger.BookingEvent;
+import gr.uniwa.marou.Ledger.EventType;
+import gr.uniwa.marou.Ledger.LedgerView;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.ZoneSales;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ The SalesAnalytics view keeps running sales and occupancy figures for every seat category as the ledger records them:
+ seats sold, revenue, cancellations and waiting list conversion, plus per-minute rollups of the last hour.
+ All the figures are held in lock-free counters, so reports are answered without locking or scanning the bookings.
+ Revenue is counted in cents, from the prices the ledger recorded with each event.
+ */
+public class SalesAnalytics implements LedgerView {
+
+    public static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final int BUCKETS = 60;
+
+    private final SeatCategories categories;
+    private final int zones;
+
+    private final LongAdder[] seatsSold;
+    private final LongAdder[] seatsCancelled;
+    private final LongAdder[] cancellations;
+    private final LongAdder[] revenueCents;
+    private final LongAdder[] waitlisted;
+    private final LongAdder[] promoted;
+
+    private final AtomicLongArray bucketMinute = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bucketSeats;
+    private final AtomicLongArray bucketRevenueCents;
+
+    /**
+     Constructs a new SalesAnalytics view.
+     @param categories the seat categories of the theater
+     */
+    public SalesAnalytics(SeatCategories categories) {
+        this.categories = categories;
+        this.zones = categories.size();
+        this.seatsSold = counters(zones);
+        this.seatsCancelled = counters(zones);
+        this.cancellations = counters(zones);
+        this.revenueCents = counters(zones);
+        this.waitlisted = counters(zones);
+        this.promoted = counters(zones);
+        this.bucketSeats = new AtomicLongArray(BUCKETS * zones);
+        this.bucketRevenueCents = new AtomicLongArray(BUCKETS * zones);
+        reset();
+    }
+
+    @Override
+    public void apply(BookingEvent event) {
+        int zone = event.category().id();
+        long cents = event.amountCents();
+        switch (event.type()) {
+            case BOOKED, PROMOTED -> {
+                seatsSold[zone].add(event.numberOfSeats());
+                revenueCents[zone].add(cents);
+                if (event.type() == EventType.PROMOTED) {
+                    promoted[zone].increment();
+                }
+                addToBucket(event.timestamp(), zone, event.numberOfSeats(), cents);
+            }
+            case CANCELLED -> {
+                seatsCancelled[zone].add(event.numberOfSeats());
+                cancellations[zone].increment();
+                revenueCents[zone].add(-cents);
+                addToBucket(event.timestamp(), zone, 0, -cents);
+            }
+            case WAITLISTED -> waitlisted[zone].increment();
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder[] counter : new LongAdder[][]{seatsSold, seatsCancelled, cancellations, revenueCents, waitlisted, promoted}) {
+            for (LongAdder adder : counter) {
+                adder.reset();
+            }
+        }
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            bucketMinute.set(slot, -1);
+        }
+    }
+
+    /**
+     Returns the sales figures of the given seat category.
+     @param category the seat category to report on
+     @return a snapshot of the figures
+     */
+    public ZoneSales report(SeatCategory category) {
+        int zone = category.id();
+        long currentMinute = System.currentTimeMillis() / BUCKET_MILLIS;
+        long recentSeats = 0;
+        long recentCents = 0;
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            if (currentMinute - bucketMinute.get(slot) < BUCKETS) {
+                recentSeats += bucketSeats.get(slot * zones + zone);
+                recentCents += bucketRevenueCents.get(slot * zones + zone);
+            }
+        }
+        return new ZoneSales(category, seatsSold[zone].sum(), seatsCancelled[zone].sum(), cancellations[zone].sum(),
+                BigDecimal.valueOf(revenueCents[zone].sum(), 2), waitlisted[zone].sum(), promoted[zone].sum(),
+                recentSeats, BigDecimal.valueOf(recentCents, 2));
+    }
+
+    /**
+     Returns the sales figures of every seat category.
+     @return a map that maps each seat category to a snapshot of its figures, ordered by id
+     */
+    public Map<SeatCategory, ZoneSales> report() {
+        Map<SeatCategory, ZoneSales> report = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            report.put(category, report(category));
+        }
+        return report;
+    }
+
+    /**
+     Returns the number of seats of the given seat category sold so far, including seats that were cancelled later.
+     @param category the seat category to report on
+     @return the seats sold
+     */
+    public long seatsSold(SeatCategory category) {
+        return seatsSold[category.id()].sum();
+    }
+
+    /**
+     Returns the share of the sold seats of the given seat category that were cancelled later.
+     @param category the seat category to report on
+     @return the cancelled seats divided by the sold seats, or 0 if no seats were sold
+     */
+    public double cancellationRate(SeatCategory category) {
+        long sold = seatsSold[category.id()].sum();
+        return sold == 0 ? 0 : (double) seatsCancelled[category.id()].sum() / sold;
+    }
+
+    /**
+     Returns the number of seats of the given seat category sold in each of the last minutes, oldest first.
+     @param category the seat category to report on
+     @param minutes the number of minutes to report, at most BUCKETS
+     @return the seats sold per minute
+     */
+    public long[] seatsSoldPerMinute(SeatCategory category, int minutes) {
+        int count = Math.max(0, Math.min(minutes, BUCKETS));
+        long currentMinute = System.currentTimeMillis() / BUCKET_MILLIS;
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            long minute = currentMinute - count + 1 + i;
+            int slot = (int) (minute % BUCKETS);
+            if (bucketMinute.get(slot) == minute) {
+                result[i] = bucketSeats.get(slot * zones + category.id());
+            }
+        }
+        return result;
+    }
+
+    /**
+     Adds a sale or a refund to the bucket of the minute it happened in. A bucket that still holds an older minute
+     is cleared first. Events arrive one at a time and in time order from the ledger, so only one thread ever
+     rotates the buckets, while readers see each counter atomically.
+     */
+    private void addToBucket(long timestamp, int zone, int seats, long cents) {
+        long minute = timestamp / BUCKET_MILLIS;
+        int slot = (int) (minute % BUCKETS);
+        if (bucketMinute.get(slot) != minute) {
+            for (int i = 0; i < zones; i++) {
+                bucketSeats.set(slot * zones + i, 0);
+                bucketRevenueCents.set(slot * zones + i, 0);
+            }
+            bucketMinute.set(slot, minute);
+        }
+        bucketSeats.addAndGet(slot * zones + zone, seats);
+        bucketRevenueCents.addAndGet(slot * zones + zone, cents);
+    }
+
+    private static LongAdder[] counters(int zones) {
+        LongAdder[] counters = new LongAdder[zones];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,158 @@
+package gr.uniwa.marou.Benchmark;
+
+import gr.uniwa.marou.DAO.TheaterDAOImpl;
+import gr.uniwa.marou.Service.AdmissionQueue;
+import gr.uniwa.marou.Service.RateLimiter;
+import gr.uniwa.marou.Service.TheaterServiceImpl;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.Theater;
+import gr.uniwa.marou.model.TheaterConfig;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The AllocationBenchmark measures how many bytes each method of the TheaterRMIService allocates per call, and how
+ long a call takes, on the server side of the call. The allocations are read from the per-thread allocation counter
+ of the JVM (com.sun.management.ThreadMXBean), before and after a run of calls made on the benchmark thread, once
+ the method has been warmed up, so the figures are the steady state the JIT compiler settles into.
+ The calls are made in-process against a scratch theater with room for every booking, through a service whose
+ admission queue and rate limits never throttle. The service sees a fixed caller host, as it does when RMI serves
+ a call; the serialization done by RMI itself is not measured.
+ The number of calls is set with theater.benchmark.operations, and the number of warm-up calls with
+ theater.benchmark.warmup. Methods whose cost grows with the number of bookings are measured, and warmed up, with
+ a two-thousandth of the calls.
+ */
+public class AllocationBenchmark {
+
+    private static final int SEATS_PER_CATEGORY = 10_000_000;
+    private static final int GUESTS = 256;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final int operations;
+    private final int warmup;
+    private final TheaterConfig config;
+    private final String[] guestNames = new String[GUESTS];
+    private PrintStream out = System.out;
+    private double overheadPerCall;
+
+    /**
+     Constructs a new AllocationBenchmark.
+     @param operations the number of measured calls of each method
+     @param warmup the number of calls of each method before it is measured
+     @param config the configuration that provides the seat categories and prices of the scratch theater
+     */
+    public AllocationBenchmark(int operations, int warmup, TheaterConfig config) {
+        this.operations = operations;
+        this.warmup = warmup;
+        this.config = config;
+        for (int i = 0; i < GUESTS; i++) {
+            guestNames[i] = "guest-" + i;
+        }
+    }
+
+    /**
+     Runs the benchmark and prints the allocations and time per call of every method.
+     @param args not used
+     @throws Exception if the scratch service fails
+     */
+    public static void main(String[] args) throws Exception {
+        new AllocationBenchmark(Integer.getInteger("theater.benchmark.operations", 20_000),
+                Integer.getInteger("theater.benchmark.warmup", 20_000), TheaterConfig.loadDefault()).run();
+        System.exit(0);
+    }
+
+    /**
+     Runs the benchmark.
+     @throws Exception if the scratch service fails
+     */
+    public void run() throws Exception {
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("This JVM does not count the memory allocated by each thread");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        SeatCategories categories = config.categories();
+        Map<SeatCategory, Integer> seats = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            seats.put(category, SEATS_PER_CATEGORY);
+        }
+        TheaterServiceImpl service = new TheaterServiceImpl(
+                new TheaterDAOImpl(new Theater("Benchmark", categories, config.prices(), seats)),
+                new AdmissionQueue(categories, Integer.MAX_VALUE, Integer.MAX_VALUE),
+                new RateLimiter(Integer.MAX_VALUE, 16_000), new RateLimiter(Integer.MAX_VALUE, 16_000)) {
+            @Override
+            protected String callerHost() {
+                return "benchmark";
+            }
+        };
+        SeatCategory[] all = categories.all().toArray(new SeatCategory[0]);
+        SeatCategory first = all[0];
+        Map<SeatCategory, Integer> group = new LinkedHashMap<>();
+        group.put(all[0], 1);
+        group.put(all[all.length - 1], 1);
+        int few = Math.max(1, operations / 2_000);
+
+        out = System.out;
+        // The service reports bookings and guest lists on the console; keep the report of the benchmark readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            overheadPerCall = (double) measure(operations, i -> {
+            })[0] / operations;
+            out.println(String.format("%-28s %12s %12s", "Method", "bytes/call", "ns/call"));
+            report("getCategories", operations, i -> service.getCategories());
+            report("getAvailability", operations, i -> service.getAvailability());
+            report("getAvailabilityChanges", operations, i -> service.getAvailabilityChanges(-1));
+            long version = service.getAvailabilityChanges(-1).version();
+            report("getAvailabilityChanges (same)", operations, i -> service.getAvailabilityChanges(version));
+            report("getPrice", operations, i -> service.getPrice(all[i % all.length]));
+            report("calculatePrice", operations, i -> service.calculatePrice(all[i % all.length], 1 + i % 4));
+            report("queuePosition", operations, i -> service.queuePosition(first, guestNames[i % GUESTS]));
+            report("getWaitingList", operations, i -> service.getWaitingList(first));
+            report("notifyGuestsInWaitingList", operations, i -> service.notifyGuestsInWaitingList(1, first));
+            report("salesReport", operations, i -> service.salesReport());
+            report("list", operations, i -> service.list());
+            report("book", operations, i -> service.book(all[i % all.length], 1, guestNames[i % GUESTS]));
+            report("cancel", operations, i -> service.cancel(all[i % all.length], 1, guestNames[i % GUESTS]));
+            report("bookGroup", operations, i -> service.bookGroup(group, guestNames[i % GUESTS]));
+            report("updateAvailability", operations, i -> service.updateAvailability(first, 1, i % 2 == 0));
+            report("guests", few, i -> service.guests());
+            report("guestsAt", few, i -> service.guestsAt(Long.MAX_VALUE));
+            report("addToWaitingList", operations, i -> service.addToWaitingList(first, guestNames[i % GUESTS], 1));
+            report("getWaitingList (waiting)", few, i -> service.getWaitingList(first));
+        } finally {
+            System.setOut(out);
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+    }
+
+    private void report(String method, int calls, Call call) throws RemoteException {
+        measure(calls < operations ? calls : warmup, call);
+        long[] result = measure(calls, call);
+        out.println(String.format("%-28s %12.1f %12d", method, result[0] / (double) calls - overheadPerCall,
+                result[1] / calls));
+    }
+
+    /**
+     Makes the given number of calls and returns the bytes they allocated and the nanoseconds they took.
+     */
+    private long[] measure(int calls, Call call) throws RemoteException {
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        return new long[]{threads.getCurrentThreadAllocatedBytes() - bytes, elapsed};
+    }
+
+    private interface Call {
+        void run(int i) throws RemoteException;
+    }
+}
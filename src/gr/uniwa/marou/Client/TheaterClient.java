@@ -1,8 +1,13 @@
 package gr.uniwa.marou.Client;
 
+import gr.uniwa.marou.Cluster.ClusterRouter;
+import gr.uniwa.marou.Service.RetryLaterException;
 import gr.uniwa.marou.Service.TheaterRMIService;
+import gr.uniwa.marou.model.AvailabilityDelta;
 import gr.uniwa.marou.model.ConsoleColors;
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.ZoneSales;
 
 import java.math.BigDecimal;
 import java.net.InetAddress;
@@ -11,7 +16,7 @@ import java.rmi.Naming;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -29,11 +34,14 @@ public class TheaterClient extends UnicastRemoteObject {
             ****************************************************************
             1. Display all available seats[args]: list <hostname> <TheaterName>
             2. To Book specific <SeatType> and desired <number> of seats in your <name>[args]: book <hostname> <SeatType> <number> <name>
-            3. Display Booked List[args]: guests <hostname>
+            3. Display Booked List[args]: guests <hostname> [<timestamp in ms>]
             4. To Cancel a Booking[args]: cancel <hostname> <SeatType> <number> <name>
+            5. To Book several <SeatType>s at once in your <name>[args]: group <hostname> <SeatType>:<number>[,<SeatType>:<number>...] <name>
+            6. Display the Sales Report[args]: report <hostname>
+            7. Watch the available seats change[args]: watch <hostname> [<seconds between polls>]
             """;
     private static final String ERROR_MESSAGE =ConsoleColors.RED+ "Invalid command format."+ConsoleColors.RESET + "Usage:\n" + USAGE_MESSAGE;
-    private static final String THEATER_NAME = "MyTheater";
+    private static final String THEATER_NAME = System.getProperty("theater.show", "MyTheater");
 
     protected TheaterClient() throws RemoteException {
     }
@@ -46,17 +54,29 @@ public class TheaterClient extends UnicastRemoteObject {
      book: to book one or more seats for a given guest name and phone number.
      guests: to retrieve a list of all guests who have booked seats.
      cancel: to cancel a booking for a given guest name and seat number.
+     group: to book seats of several seat types at once for a given guest name.
+     report: to display the sales figures of every seat type.
+     watch: to keep displaying the available seats, e.g. on a lobby display.
      Usage: java gr.uniwa.marou.Client <command> [arguments]
+     To use a theater cluster, pass the addresses of one or more of its nodes (host:port, separated by commas) in the
+     theater.cluster.seed system property, and the name of the show in theater.show.
      @param args an array of Strings representing the command and its arguments.
      */
     public static void main(String[] args) {
         try{
-            // Create the RMI URL using the local host address and the port number
-            String url = "rmi://" + InetAddress.getLocalHost().getHostAddress() + ":" + PORT_NUMBER + "/TheaterService";
-            // Look up the remote object using the RMI URL
-            Remote remoteObject = Naming.lookup(url);
-            // Cast the remote object to the TheaterRMIService interface
-            TheaterRMIService remoteServer = (TheaterRMIService) remoteObject;
+            TheaterRMIService remoteServer;
+            String clusterSeeds = System.getProperty("theater.cluster.seed");
+            if (clusterSeeds != null) {
+                // In a cluster, route every call to the node that owns the show
+                remoteServer = new ClusterRouter(List.of(clusterSeeds.split(","))).service(THEATER_NAME);
+            } else {
+                // Create the RMI URL using the local host address and the port number
+                String url = "rmi://" + InetAddress.getLocalHost().getHostAddress() + ":" + PORT_NUMBER + "/TheaterService";
+                // Look up the remote object using the RMI URL
+                Remote remoteObject = Naming.lookup(url);
+                // Cast the remote object to the TheaterRMIService interface
+                remoteServer = (TheaterRMIService) remoteObject;
+            }
 
             System.out.println("Welcome to the Theater booking app");
 
@@ -72,6 +92,9 @@ public class TheaterClient extends UnicastRemoteObject {
                 case "book" -> handleBookCommand(args, remoteServer);
                 case "guests" -> handleGuestsCommand(args, remoteServer);
                 case "cancel" -> handleCancelCommand(args, remoteServer);
+                case "group" -> handleGroupCommand(args, remoteServer);
+                case "report" -> handleReportCommand(args, remoteServer);
+                case "watch" -> handleWatchCommand(args, remoteServer);
                 default -> System.out.println(USAGE_MESSAGE);
             }
         }catch (Exception e){
@@ -112,30 +135,41 @@ public class TheaterClient extends UnicastRemoteObject {
      Attempts to book the specified number of seats of the given seat type for the specified guest name
      by calling the remote server's "book" method. If the booking is successful, a success message is printed
      to the console. If the booking fails because there are no seats available or there is an error with the server,
-     an error message is printed to the console.
+     an error message is printed to the console. If the server is too busy to queue the request, the guest is told
+     when to try again.
      @param args the input arguments for the "book" command: the hostname of the machine, the type of seats, the number of seats to reserve,
      and the name of the guest
      @param remoteServer the remote server object to call the "book" method on
      @throws RemoteException if there is an error communicating with the remote server
      */
     private static void handleBookCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException {
-        validateInput(args);
+        SeatCategories categories = remoteServer.getCategories();
+        validateInput(args, categories);
         String hostname = args[1];
         System.out.println("Welcome, "+ConsoleColors.PURPLE + hostname + ConsoleColors.RESET + "!\n");
         String guestName = args[4];
-        SeatType seatType = getSeatType(args[2]);
+        SeatCategory seatType = getSeatCategory(categories, args[2]);
         int numberOfSeats = Integer.parseInt(args[3]);
 
         BigDecimal totalPrice = remoteServer.calculatePrice(seatType, numberOfSeats);
-        boolean success = remoteServer.book(seatType, numberOfSeats, guestName);
+        boolean success;
+        try {
+            success = remoteServer.book(seatType, numberOfSeats, guestName);
+        } catch (RetryLaterException e) {
+            long seconds = (e.getRetryAfterMillis() + 999) / 1000;
+            System.out.println(ConsoleColors.RED + e.getMessage() + ConsoleColors.RESET
+                    + " Please try again in " + seconds + " second(s).");
+            return;
+        }
 
         if (success) {
             System.out.println(ConsoleColors.GREEN + "Successfully booked " + ConsoleColors.RESET + numberOfSeats + " " + seatType + " seats in name "
                     + guestName + " for a total price of " + totalPrice + "€");
         } else {
-            Map<SeatType, Integer> availabilityMap = remoteServer.getAvailability();
+            Map<SeatCategory, Integer> availabilityMap = remoteServer.getAvailability();
             int availableSeats = availabilityMap.getOrDefault(seatType,0);
-            if (availableSeats == 0) {
+            if (availableSeats <= 0) {
+                // An overbooked category has fewer than zero seats left
                 System.out.println(ConsoleColors.RED + "Sorry, there are no " + seatType + " seats available." + ConsoleColors.RESET);
                 System.out.println("Would you like to be added to the waiting list for " + seatType + " seats? (y/n)");
                 Scanner scanner = new Scanner(System.in);
@@ -169,12 +203,13 @@ public class TheaterClient extends UnicastRemoteObject {
 
     /**
      Handles the "guests" command, which prints the number of people attending the show and information about each guest.
+     If a timestamp is given, the guest list as it was at that moment is printed instead.
      @param args the command arguments
      @param remoteServer the remote server to communicate with
      @throws RemoteException if there is an error communicating with the remote server
      */
     private static void handleGuestsCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException {
-        if (args.length != 2) {
+        if (args.length != 2 && (args.length != 3 || !args[2].matches("\\d+"))) {
             System.out.println(ERROR_MESSAGE);
             System.exit(1);
         }
@@ -184,7 +219,11 @@ public class TheaterClient extends UnicastRemoteObject {
             System.exit(1);
         }
         System.out.println("Welcome, "+ConsoleColors.PURPLE + hostname + ConsoleColors.RESET + "!\n");
-        System.out.println(remoteServer.guests());
+        if (args.length == 3) {
+            System.out.println(remoteServer.guestsAt(Long.parseLong(args[2])));
+        } else {
+            System.out.println(remoteServer.guests());
+        }
     }
 
     /**
@@ -200,9 +239,10 @@ public class TheaterClient extends UnicastRemoteObject {
      @throws RemoteException if a remote communication error occurs while canceling the reservation
      */
     private static void handleCancelCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException {
-        validateInput(args);
+        SeatCategories categories = remoteServer.getCategories();
+        validateInput(args, categories);
         String guestName = args[4];
-        SeatType seatType = getSeatType(args[2]);
+        SeatCategory seatType = getSeatCategory(categories, args[2]);
         int numberOfSeats = Integer.parseInt(args[3]);
         System.out.println("Welcome, "+ConsoleColors.PURPLE + args[1] + ConsoleColors.RESET + "!\n");
 
@@ -227,20 +267,145 @@ public class TheaterClient extends UnicastRemoteObject {
     }
 
     /**
-     Parses the given string argument to return the corresponding SeatType enum value.
-     @param arg the string argument representing a SeatType
-     @return the SeatType enum value corresponding to the given string argument
-     @throws IllegalArgumentException if the given string argument does not correspond to a valid SeatType
+     Handles the "group" command, which books seats of several seat types for one guest as a single transaction.
+     The seats are given as a comma separated list of SeatType:number pairs, for example SA:4,CE:2.
+     Either all the requested seats are booked or none of them are.
+     @param args the input arguments for the "group" command: the hostname of the machine, the requested seats,
+     and the name of the guest
+     @param remoteServer the remote server object to call the "bookGroup" method on
+     @throws RemoteException if there is an error communicating with the remote server
      */
-    private static SeatType getSeatType(String arg) {
-        return switch (arg.toUpperCase()) {
-            case "SA" -> SeatType.SA;
-            case "SB" -> SeatType.SB;
-            case "SC" -> SeatType.SC;
-            case "CE" -> SeatType.CE;
-            case "ST" -> SeatType.ST;
-            default -> throw new IllegalArgumentException("Invalid seat type: " + arg);
-        };
+    private static void handleGroupCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException {
+        if (args.length != 4) {
+            System.out.println(ERROR_MESSAGE);
+            System.exit(1);
+        }
+        String hostname = args[1];
+        if (!isValidHostname(hostname)) {
+            System.out.println(ConsoleColors.RED + "Invalid hostname: " + ConsoleColors.RESET + hostname);
+            System.exit(1);
+        }
+        SeatCategories categories = remoteServer.getCategories();
+        Map<SeatCategory, Integer> seats = new LinkedHashMap<>();
+        for (String part : args[2].split(",")) {
+            String[] pair = part.split(":");
+            if (pair.length != 2 || !pair[1].matches("\\d+") || Integer.parseInt(pair[1]) <= 0) {
+                System.out.println(ConsoleColors.RED + "Invalid input: seats must be given as <SeatType>:<number>." + ConsoleColors.RESET);
+                System.exit(1);
+            }
+            seats.merge(getSeatCategory(categories, pair[0]), Integer.parseInt(pair[1]), Integer::sum);
+        }
+        String guestName = args[3];
+        System.out.println("Welcome, "+ConsoleColors.PURPLE + hostname + ConsoleColors.RESET + "!\n");
+
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+            totalPrice = totalPrice.add(remoteServer.calculatePrice(entry.getKey(), entry.getValue()));
+        }
+        boolean success;
+        try {
+            success = remoteServer.bookGroup(seats, guestName);
+        } catch (RetryLaterException e) {
+            long seconds = (e.getRetryAfterMillis() + 999) / 1000;
+            System.out.println(ConsoleColors.RED + e.getMessage() + ConsoleColors.RESET
+                    + " Please try again in " + seconds + " second(s).");
+            return;
+        }
+        if (success) {
+            System.out.println(ConsoleColors.GREEN + "Successfully booked " + ConsoleColors.RESET + seats + " seats in name "
+                    + guestName + " for a total price of " + totalPrice + "€");
+        } else {
+            System.out.println(ConsoleColors.RED + "Failed to book " + seats + " seats" + ConsoleColors.RESET
+                    + ". Not every seat type has enough seats available, so nothing was booked.");
+        }
+    }
+
+    /**
+     Handles the "report" command, which prints the sales figures of every seat category: the seats sold and cancelled,
+     the revenue, the waiting list conversion and the sales of the last hour.
+     @param args the command arguments
+     @param remoteServer the remote server to communicate with
+     @throws RemoteException if there is an error communicating with the remote server
+     */
+    private static void handleReportCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException {
+        if (args.length != 2) {
+            System.out.println(ERROR_MESSAGE);
+            System.exit(1);
+        }
+        String hostname = args[1];
+        if (!isValidHostname(hostname)) {
+            System.out.println(ConsoleColors.RED + "Invalid hostname: "+ ConsoleColors.RESET + hostname);
+            System.exit(1);
+        }
+        System.out.println("Welcome, "+ConsoleColors.PURPLE + hostname + ConsoleColors.RESET + "!\n");
+        for (ZoneSales sales : remoteServer.salesReport().values()) {
+            System.out.printf("%s (Code: %s): %d seats sold, %d cancelled in %d cancellation(s), revenue %s €"
+                            + " (last hour: %d seats, %s €), waiting list conversion %.0f%% of %d.%n",
+                    sales.seatCategory(), sales.seatCategory().code(), sales.seatsSold(), sales.seatsCancelled(),
+                    sales.cancellations(), sales.revenue(), sales.seatsSoldLastHour(), sales.revenueLastHour(),
+                    sales.waitlistConversion() * 100, sales.waitlisted());
+        }
+    }
+
+    /**
+     Handles the "watch" command, which polls the availability feed of the server and prints the available seats
+     whenever they change. Each poll passes the version of the last changes applied, so the server answers with only
+     the seat categories that changed since, or with nothing if none did. The command runs until it is interrupted.
+     @param args the command arguments
+     @param remoteServer the remote server to communicate with
+     @throws RemoteException if there is an error communicating with the remote server
+     @throws InterruptedException if the client is interrupted while waiting for the next poll
+     */
+    private static void handleWatchCommand(String[] args, TheaterRMIService remoteServer) throws RemoteException, InterruptedException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println(ERROR_MESSAGE);
+            System.exit(1);
+        }
+        String hostname = args[1];
+        if (!isValidHostname(hostname)) {
+            System.out.println(ConsoleColors.RED + "Invalid hostname: "+ ConsoleColors.RESET + hostname);
+            System.exit(1);
+        }
+        long pollMillis = 1000;
+        if (args.length == 3) {
+            try {
+                pollMillis = Math.max(1, Long.parseLong(args[2])) * 1000;
+            } catch (NumberFormatException e) {
+                System.out.println(ConsoleColors.RED + "Invalid number of seconds: " + ConsoleColors.RESET + args[2]);
+                System.exit(1);
+            }
+        }
+        SeatCategories categories = remoteServer.getCategories();
+        Map<SeatCategory, Integer> availability = new LinkedHashMap<>();
+        long version = -1;
+        while (true) {
+            AvailabilityDelta delta = remoteServer.getAvailabilityChanges(version);
+            if (!delta.notModified()) {
+                delta.applyTo(availability, categories);
+                Map<SeatCategory, Integer> changes = delta.changes(categories);
+                StringBuilder line = new StringBuilder(String.format("[version %d]", delta.version()));
+                for (Map.Entry<SeatCategory, Integer> entry : availability.entrySet()) {
+                    line.append(changes.containsKey(entry.getKey()) ? " *" : " ")
+                            .append(entry.getKey().code()).append('=').append(Math.max(0, entry.getValue()));
+                }
+                System.out.println(line);
+            }
+            version = delta.version();
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    /**
+     Parses the given string argument to return the corresponding seat category of the theater.
+     The codes are resolved against the categories the server is configured with, so categories added to the
+     configuration can be booked without changing the client.
+     @param categories the seat categories of the theater
+     @param arg the string argument representing the code of a seat category
+     @return the SeatCategory corresponding to the given string argument
+     @throws IllegalArgumentException if the given string argument does not correspond to a valid seat category
+     */
+    private static SeatCategory getSeatCategory(SeatCategories categories, String arg) {
+        return categories.byCode(arg);
     }
 
     /**
@@ -249,9 +414,10 @@ public class TheaterClient extends UnicastRemoteObject {
      * the number of seats to reserve (a positive integer),and the name of the Client.
      * If the input arguments are not valid, the method prints an error message to the console and exits the program.
      * @param args the input arguments to validate
+     * @param categories the seat categories of the theater
      * @throws IllegalArgumentException if the input is invalid
      */
-    private static void validateInput(String[] args) {
+    private static void validateInput(String[] args, SeatCategories categories) {
         if (args.length != 5) {
             System.out.println(ERROR_MESSAGE);
             System.exit(1);
@@ -261,11 +427,12 @@ public class TheaterClient extends UnicastRemoteObject {
             System.out.println(ConsoleColors.RED + "Invalid hostname: " + ConsoleColors.RESET + hostname);
             System.exit(1);
         }
-        List<SeatType> seatTypes = Arrays.asList(SeatType.SA, SeatType.SB, SeatType.SC, SeatType.CE, SeatType.ST);
-        if(!seatTypes.contains(getSeatType(args[2].toUpperCase()))){
-            System.out.println(ConsoleColors.RED + "Invalid input:" + ConsoleColors.RESET +  "seat type must be one of: " + seatTypes  );
-            for(SeatType s : seatTypes){
-                System.out.print(s);
+        try {
+            getSeatCategory(categories, args[2]);
+        } catch (IllegalArgumentException e) {
+            System.out.println(ConsoleColors.RED + "Invalid input:" + ConsoleColors.RESET +  "seat type must be one of: " + categories  );
+            for(SeatCategory s : categories.all()){
+                System.out.print(s.code() + " ");
             }
             System.exit(1);
         }
@@ -0,0 +1,318 @@
+package gr.uniwa.marou.Cluster;
+
+import gr.uniwa.marou.Service.TheaterRMIService;
+import gr.uniwa.marou.Service.TheaterServiceImpl;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ The ClusterNode is the part of a TheaterServer that takes part in a cluster. Every node knows the members of the
+ cluster and the list of shows, and hosts the shows that the ConsistentHashRing of the members assigns to it, each
+ bound in the registry of the node as "TheaterService/" followed by the name of the show.
+ The first node hosts every show, and coordinates the membership: a node that starts later joins through any
+ member, which passes the join on to the first node. The first node handles one join at a time, adding the node to
+ the membership under a new version and telling every node about it, so concurrent joins through different members
+ are neither lost nor deadlocked. No node holds its lock while it calls another node. Each node then hands the shows
+ it no longer owns over to their new owner: the show is unbound and drained, and once the calls in progress have finished, its bookings and
+ waiting list are sent to the new owner, which restores them and binds the show. Clients that reach the old owner
+ in the meantime are told to retry, and find the show on its new node.
+ */
+public class ClusterNode extends UnicastRemoteObject implements ClusterService {
+
+    public static final String CLUSTER_BINDING = "TheaterCluster";
+    public static final String SHOW_BINDING_PREFIX = "TheaterService/";
+
+    /**
+     Creates the service of a show, with all its seats available.
+     */
+    public interface ShowFactory {
+        TheaterServiceImpl create(String show) throws RemoteException;
+    }
+
+    private final String self;
+    private final Registry registry;
+    private final List<String> shows;
+    private final ShowFactory factory;
+    private final long handOffTimeoutMillis;
+    private final Map<String, TheaterServiceImpl> hosted = new ConcurrentHashMap<>();
+    private final Object joinLock = new Object();
+    private List<String> members;
+    private long version;
+    private ConsistentHashRing ring;
+    private boolean inCluster;
+
+    /**
+     Constructs a new ClusterNode and binds it in the registry of the node as "TheaterCluster".
+     The node is the only member of its cluster until it joins another node, and does not host any show until it
+     is bootstrapped or shows are handed over to it.
+     @param self the address of this node, as host:port
+     @param registry the registry of this node
+     @param shows the names of all the shows of the cluster
+     @param factory the factory of the services of the shows
+     @param handOffTimeoutMillis the maximum time to wait for the calls in progress of a show that is handed over
+     @throws RemoteException if the node cannot be exported or bound
+     */
+    public ClusterNode(String self, Registry registry, List<String> shows, ShowFactory factory,
+                       long handOffTimeoutMillis) throws RemoteException {
+        super();
+        this.self = self;
+        this.registry = registry;
+        this.shows = List.copyOf(shows);
+        this.factory = factory;
+        this.handOffTimeoutMillis = handOffTimeoutMillis;
+        this.members = List.of(self);
+        this.ring = new ConsistentHashRing(members);
+        registry.rebind(CLUSTER_BINDING, this);
+    }
+
+    /**
+     Starts a new cluster with this node as its only member, hosting every show.
+     @throws RemoteException if a show cannot be created or bound
+     */
+    public synchronized void bootstrap() throws RemoteException {
+        inCluster = true;
+        for (String show : shows) {
+            if (!hosted.containsKey(show)) {
+                host(show, factory.create(show));
+            }
+        }
+    }
+
+    /**
+     Joins the cluster of the given member. When this returns, the shows this node owns have been handed over to it.
+     @param member the address of any member of the cluster
+     @throws RemoteException if the member cannot be reached
+     */
+    public void joinVia(String member) throws RemoteException {
+        List<String> joined = lookup(member).join(self);
+        System.out.println("Joined the theater cluster " + joined + ", hosting " + hosted.keySet() + ".");
+    }
+
+    @Override
+    public synchronized List<String> members() {
+        return new ArrayList<>(members);
+    }
+
+    /**
+     Adds a node to the cluster. A node other than the first member passes the join on to the first member, which
+     adds the node under the next version of the membership and tells every member, the new node first, about it.
+     The members hand the shows that move over to the new node before this returns.
+     @param node the address of the joining node
+     @return the new membership
+     @throws RemoteException if a member cannot be reached, or if this node is not part of a cluster yet
+     */
+    @Override
+    public List<String> join(String node) throws RemoteException {
+        String coordinator;
+        synchronized (this) {
+            if (!inCluster) {
+                throw new RemoteException(self + " has not joined a theater cluster yet");
+            }
+            coordinator = members.get(0);
+        }
+        if (!coordinator.equals(self)) {
+            return lookup(coordinator).join(node);
+        }
+        // One join at a time, so that every change starts from the membership the last one left
+        synchronized (joinLock) {
+            List<String> current;
+            long next;
+            synchronized (this) {
+                if (members.contains(node)) {
+                    return members();
+                }
+                current = members;
+                next = version + 1;
+            }
+            List<String> joined = new ArrayList<>(current);
+            joined.add(node);
+            lookup(node).updateMembers(joined, next);
+            for (String member : current) {
+                if (!member.equals(self)) {
+                    lookup(member).updateMembers(joined, next);
+                }
+            }
+            updateMembers(joined, next);
+            return joined;
+        }
+    }
+
+    /**
+     Replaces the membership of the cluster, unless this node already has the given version or a later one, and
+     hands over the shows this node no longer owns. The hand-offs run once the lock of the node has been released.
+     @param next the new members of the cluster
+     @param nextVersion the version of the new membership
+     */
+    @Override
+    public void updateMembers(List<String> next, long nextVersion) {
+        Map<String, String> moving = new LinkedHashMap<>();
+        synchronized (this) {
+            if (nextVersion <= version) {
+                return;
+            }
+            members = List.copyOf(next);
+            version = nextVersion;
+            ring = new ConsistentHashRing(members);
+            inCluster = true;
+            for (String show : hosted.keySet()) {
+                String owner = ring.nodeFor(show);
+                if (!owner.equals(self)) {
+                    moving.put(show, owner);
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : moving.entrySet()) {
+            handOff(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     Takes over a show from another node, restoring its bookings, waiting list and overbook allowances. If the show
+     cannot be restored, its half-restored service is removed again, so that the node giving the show up keeps it.
+     @param snapshot the state of the show
+     @throws RemoteException if the show cannot be created or bound
+     @throws IllegalStateException if this node already hosts the show, or if the bookings do not fit its theater
+     */
+    @Override
+    public synchronized void adopt(ShowSnapshot snapshot) throws RemoteException {
+        if (hosted.containsKey(snapshot.show())) {
+            throw new IllegalStateException(self + " already hosts " + snapshot.show());
+        }
+        restoreShow(snapshot);
+    }
+
+    /**
+     Unbinds and drains every show of this node, and leaves the registry. The state of the shows is not handed over.
+     @param timeoutMillis the maximum time to wait for the calls in progress of each show
+     */
+    public synchronized void shutdown(long timeoutMillis) {
+        for (Map.Entry<String, TheaterServiceImpl> entry : hosted.entrySet()) {
+            unbind(SHOW_BINDING_PREFIX + entry.getKey());
+            entry.getValue().shutdown(timeoutMillis);
+        }
+        hosted.clear();
+        unbind(CLUSTER_BINDING);
+    }
+
+    /**
+     Returns the names of the shows this node hosts.
+     @return the hosted shows
+     */
+    public List<String> hostedShows() {
+        return new ArrayList<>(hosted.keySet());
+    }
+
+    /**
+     Looks up the ClusterService of a node.
+     @param node the address of the node, as host:port
+     @return the remote ClusterService of the node
+     @throws RemoteException if the node cannot be reached or is not a cluster node
+     */
+    public static ClusterService lookup(String node) throws RemoteException {
+        try {
+            return (ClusterService) registryOf(node).lookup(CLUSTER_BINDING);
+        } catch (NotBoundException e) {
+            throw new RemoteException(node + " is not a theater cluster node", e);
+        }
+    }
+
+    /**
+     Looks up the service of a show on a node.
+     @param node the address of the node, as host:port
+     @param show the name of the show
+     @return the remote service of the show
+     @throws RemoteException if the node cannot be reached
+     @throws NotBoundException if the node does not host the show
+     */
+    public static TheaterRMIService lookupShow(String node, String show) throws RemoteException, NotBoundException {
+        return (TheaterRMIService) registryOf(node).lookup(SHOW_BINDING_PREFIX + show);
+    }
+
+    private static Registry registryOf(String node) throws RemoteException {
+        int colon = node.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid node address, expected host:port: " + node);
+        }
+        return LocateRegistry.getRegistry(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+    }
+
+    private void host(String show, TheaterServiceImpl service) throws RemoteException {
+        hosted.put(show, service);
+        registry.rebind(SHOW_BINDING_PREFIX + show, service);
+        System.out.println(self + " now hosts " + show + ".");
+    }
+
+    /**
+     Hands a show over to its new owner. The service stops accepting calls and the calls in progress are given until
+     the hand-off timeout to finish; the service is then sealed, so that calls still in progress cannot change the
+     show once its snapshot has been taken, and only after the snapshot are those calls cut off. If the new owner
+     cannot take the show, it is restored on this node so that its bookings are not lost.
+     */
+    private void handOff(String show, String owner) {
+        TheaterServiceImpl service = hosted.remove(show);
+        if (service == null) {
+            return;
+        }
+        unbind(SHOW_BINDING_PREFIX + show);
+        boolean finished = service.awaitCalls(handOffTimeoutMillis);
+        if (!finished) {
+            System.out.println("Calls to " + show + " still in progress after the hand-off timeout; turning them away.");
+        }
+        service.seal();
+        ShowSnapshot snapshot;
+        try {
+            snapshot = new ShowSnapshot(show, service.currentBookings(), service.getWaitingList(null),
+                    service.overbookAllowances());
+        } catch (RemoteException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (!finished) {
+                service.unexport();
+            }
+        }
+        try {
+            lookup(owner).adopt(snapshot);
+            System.out.println(self + " handed " + show + " over to " + owner + ".");
+        } catch (RemoteException | RuntimeException e) {
+            System.out.println("Could not hand " + show + " over to " + owner + ", keeping it: " + e);
+            try {
+                restoreShow(snapshot);
+            } catch (RemoteException | RuntimeException ex) {
+                System.out.println("Could not restore " + show + ": " + ex);
+            }
+        }
+    }
+
+    /**
+     Creates the service of a show from a snapshot and hosts it. A service that fails to be restored or bound is
+     unexported and forgotten.
+     */
+    private void restoreShow(ShowSnapshot snapshot) throws RemoteException {
+        TheaterServiceImpl service = factory.create(snapshot.show());
+        try {
+            service.restore(snapshot.bookings(), snapshot.waitingList(), snapshot.overbookAllowances());
+            host(snapshot.show(), service);
+        } catch (RemoteException | RuntimeException e) {
+            hosted.remove(snapshot.show(), service);
+            UnicastRemoteObject.unexportObject(service, true);
+            throw e;
+        }
+    }
+
+    private void unbind(String name) {
+        try {
+            registry.unbind(name);
+        } catch (NotBoundException | RemoteException e) {
+            // Already unbound
+        }
+    }
+}
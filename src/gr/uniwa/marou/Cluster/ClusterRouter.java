@@ -0,0 +1,119 @@
+package gr.uniwa.marou.Cluster;
+
+import gr.uniwa.marou.Service.RetryLaterException;
+import gr.uniwa.marou.Service.TheaterRMIService;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ The ClusterRouter is the smart client of a theater cluster. It learns the members of the cluster from any of the
+ given nodes, and hands out TheaterRMIService proxies that send every call to the node that owns the show.
+ A call that cannot have reached the show, because the node is down, no longer hosts the show or is handing the
+ show over, refreshes the membership and is tried again on the new owner, so clients keep working while nodes join.
+ Every other outcome, including rate limiting by the owner, is returned to the caller unchanged.
+ */
+public class ClusterRouter {
+
+    public static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    private final List<String> seeds;
+    private volatile ConsistentHashRing ring;
+
+    /**
+     Constructs a new ClusterRouter.
+     @param seeds the addresses of one or more nodes of the cluster, as host:port
+     @throws IllegalArgumentException if no node is given
+     */
+    public ClusterRouter(List<String> seeds) {
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("At least one cluster node is required");
+        }
+        this.seeds = List.copyOf(seeds);
+    }
+
+    /**
+     Returns a TheaterRMIService whose calls are routed to the node that owns the given show.
+     @param show the name of the show
+     @return the routing proxy
+     */
+    public TheaterRMIService service(String show) {
+        return (TheaterRMIService) Proxy.newProxyInstance(TheaterRMIService.class.getClassLoader(),
+                new Class<?>[]{TheaterRMIService.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    return invoke(show, method, args);
+                });
+    }
+
+    /**
+     Returns the address of the node that owns the given show, as far as this router knows.
+     @param show the name of the show
+     @return the address of the owning node
+     @throws RemoteException if none of the known nodes can be reached
+     */
+    public String ownerOf(String show) throws RemoteException {
+        ConsistentHashRing current = ring;
+        if (current == null) {
+            current = refresh();
+        }
+        return current.nodeFor(show);
+    }
+
+    /**
+     Asks the known nodes for the current members of the cluster, trying the members of the last known ring first
+     and then the seed nodes.
+     @return the new ring
+     @throws RemoteException if none of the nodes can be reached
+     */
+    public synchronized ConsistentHashRing refresh() throws RemoteException {
+        RemoteException failure = null;
+        List<String> known = ring == null ? seeds : ring.nodes();
+        for (List<String> candidates : List.of(known, seeds)) {
+            for (String node : candidates) {
+                try {
+                    ring = new ConsistentHashRing(ClusterNode.lookup(node).members());
+                    return ring;
+                } catch (RemoteException e) {
+                    failure = e;
+                }
+            }
+        }
+        throw new RemoteException("No theater cluster node can be reached", failure);
+    }
+
+    private Object invoke(String show, Method method, Object[] args) throws Throwable {
+        Exception failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String owner = ownerOf(show);
+            try {
+                return method.invoke(ClusterNode.lookupShow(owner, show), args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof NoSuchObjectException || cause instanceof ConnectException
+                        || cause instanceof ConnectIOException || cause instanceof RetryLaterException)) {
+                    throw cause;
+                }
+                // A show that is being handed over turns calls away, but the membership already names its new owner
+                if (cause instanceof RetryLaterException && refresh().nodeFor(show).equals(owner)) {
+                    throw cause;
+                }
+                failure = (Exception) cause;
+            } catch (NotBoundException | ConnectException | ConnectIOException e) {
+                failure = e;
+            }
+            refresh();
+            Thread.sleep(RETRY_DELAY_MILLIS * (attempt + 1));
+        }
+        throw new RemoteException("Could not reach the node that owns " + show, failure);
+    }
+}
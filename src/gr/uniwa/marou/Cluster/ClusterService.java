@@ -0,0 +1,23 @@
+package gr.uniwa.marou.Cluster;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+
+/**
+ The ClusterService interface is exported by every node of a theater cluster under the name "TheaterCluster".
+ Nodes use it to join the cluster, to learn about changes of membership and to hand shows over to each other,
+ and smart clients use it to find out which node owns a show. Every membership carries a version, which grows with
+ each change, so that a node can ignore a membership older than the one it has.
+ */
+public interface ClusterService extends Remote {
+
+    List<String> members() throws RemoteException;
+
+    List<String> join(String node) throws RemoteException;
+
+    void updateMembers(List<String> members, long version) throws RemoteException;
+
+    void adopt(ShowSnapshot snapshot) throws RemoteException;
+}
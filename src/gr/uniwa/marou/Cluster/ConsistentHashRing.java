@@ -0,0 +1,73 @@
+package gr.uniwa.marou.Cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ The ConsistentHashRing assigns shows to the nodes of a cluster. Every node is placed on a hash ring at a number of
+ virtual points, and a show is owned by the node of the first point at or after the hash of the show's name.
+ When a node joins, it only takes over the shows that fall just before its points, so the other shows stay where
+ they are. The ring is immutable; a change of membership builds a new ring.
+ */
+public class ConsistentHashRing {
+
+    public static final int VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     Constructs a new ring of the given nodes.
+     @param nodes the addresses of the nodes, as host:port
+     @throws IllegalArgumentException if there are no nodes
+     */
+    public ConsistentHashRing(List<String> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     Returns the node that owns the given show.
+     @param show the name of the show
+     @return the address of the owning node
+     */
+    public String nodeFor(String show) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(show));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     Returns the nodes of the ring, in the order they were given.
+     @return an unmodifiable list of the node addresses
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = hash << 8 | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
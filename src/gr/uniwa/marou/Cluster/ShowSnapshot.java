@@ -0,0 +1,20 @@
+package gr.uniwa.marou.Cluster;
+
+import gr.uniwa.marou.model.Client;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The ShowSnapshot record carries the state of a show from the node that gives it up to the node that takes it over.
+ @param show the name of the show
+ @param bookings the current bookings of the show
+ @param waitingList the waiting list of the show, by seat category
+ @param overbookAllowances the number of seats each seat category may be overbooked by, which overbooked seats need
+ to fit into the theater that takes the show over
+ */
+public record ShowSnapshot(String show, List<Client> bookings, Map<SeatCategory, List<Client>> waitingList,
+                           Map<SeatCategory, Integer> overbookAllowances) implements Serializable {
+}
@@ -0,0 +1,218 @@
+package gr.uniwa.marou.DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ The FileTheaterStore is an embedded store that runs in-process and keeps the availability of each seat category in
+ an append-only log file. Every write appends one line holding a whole batch of categories, for example
+ "SA=96,CE=223", and forces it to disk before returning, so a batch is either stored completely or, if the process
+ dies in the middle of it, ignored when the log is loaded again.
+ Loading replays the log, the last value of each category winning. Once the log grows past a threshold it is
+ compacted into a single line holding the latest value of every category, written to a temporary file and
+ atomically moved over the log.
+ The ledger is kept in a second append-only file, one record per line, which is never compacted. Ledger records are
+ written without waiting for the disk, which is enough to survive the server process dying; they are forced to disk
+ before every availability batch and when the store is closed.
+ */
+public class FileTheaterStore implements TheaterStore {
+
+    public static final String LOG_FILE = "availability.log";
+    public static final String LEDGER_FILE = "ledger.log";
+    public static final int COMPACTION_THRESHOLD = 10_000;
+
+    private final Path logFile;
+    private final Path ledgerFile;
+    private final FileChannel ledgerChannel;
+    private final Map<String, Integer> latest = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int batches;
+
+    /**
+     Opens the store kept in the given directory, creating the directory if it does not exist.
+     @param directory the directory of the log file
+     @throws IOException if the directory or the log file cannot be created or opened
+     */
+    public FileTheaterStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.logFile = directory.resolve(LOG_FILE);
+        this.ledgerFile = directory.resolve(LEDGER_FILE);
+        this.channel = open(logFile);
+        truncateTornTail(channel, logFile);
+        this.ledgerChannel = open(ledgerFile);
+        truncateTornTail(ledgerChannel, ledgerFile);
+    }
+
+    /**
+     Loads the latest stored availability of each seat category by replaying the log.
+     A malformed line is skipped.
+     @return the stored availability, or an empty map if nothing has been stored yet
+     @throws IOException if the log file cannot be read
+     */
+    @Override
+    public synchronized Map<String, Integer> load() throws IOException {
+        latest.clear();
+        batches = 0;
+        List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            Map<String, Integer> batch = parse(line);
+            if (batch != null) {
+                latest.putAll(batch);
+                batches++;
+            }
+        }
+        return new LinkedHashMap<>(latest);
+    }
+
+    /**
+     Appends a batch of availability values to the log and forces it to disk.
+     @param availability the latest availability of the seat categories in the batch, keyed by code
+     @throws IOException if the batch cannot be written
+     */
+    @Override
+    public synchronized void write(Map<String, Integer> availability) throws IOException {
+        if (availability.isEmpty()) {
+            return;
+        }
+        ledgerChannel.force(false);
+        append(channel, format(availability));
+        channel.force(false);
+        latest.putAll(availability);
+        if (++batches > COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     Loads the records of the ledger, in the order they were appended.
+     @return the records, or an empty list if the ledger is empty
+     @throws IOException if the ledger file cannot be read
+     */
+    @Override
+    public synchronized List<String> loadLedger() throws IOException {
+        return Files.readAllLines(ledgerFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     Appends records to the ledger in one write, one line each. The records are forced to disk with the next
+     availability batch.
+     @param records the records, none of which may contain a line break
+     @throws IOException if the records cannot be written
+     @throws IllegalArgumentException if a record contains a line break, in which case nothing is written
+     */
+    @Override
+    public synchronized void appendLedger(List<String> records) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String record : records) {
+            if (record.indexOf('\n') >= 0 || record.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("A ledger record must fit on one line: " + record);
+            }
+            lines.append(record).append('\n');
+        }
+        append(ledgerChannel, lines.toString());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            ledgerChannel.force(false);
+            ledgerChannel.close();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     Replaces the log with a single batch holding the latest value of every seat category.
+     @throws IOException if the compacted log cannot be written
+     */
+    private void compact() throws IOException {
+        Path compacted = logFile.resolveSibling(LOG_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(format(latest).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        try {
+            channel.close();
+            Files.move(compacted, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            batches = 1;
+        } finally {
+            // Reopened even if the move failed, so that the store keeps appending to the uncompacted log
+            channel = open(logFile);
+        }
+    }
+
+    /**
+     Cuts off a last line that was not completely written, so that the next batch starts on a line of its own.
+     @throws IOException if the log file cannot be read or truncated
+     */
+    private static void truncateTornTail(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        byte[] content = Files.readAllBytes(file);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < size) {
+            System.out.println("Discarding an incomplete record at the end of " + file);
+            channel.truncate(end);
+            channel.force(true);
+        }
+    }
+
+    private static void append(FileChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String format(Map<String, Integer> availability) {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : availability.entrySet()) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            line.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return line.append('\n').toString();
+    }
+
+    private static Map<String, Integer> parse(String line) {
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        try {
+            for (String part : line.split(",")) {
+                String[] pair = part.split("=");
+                if (pair.length != 2 || pair[0].isEmpty()) {
+                    throw new IllegalArgumentException("expected code=seats");
+                }
+                batch.put(pair[0], Integer.parseInt(pair[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Skipping malformed availability record: " + line);
+            return null;
+        }
+        return batch;
+    }
+}
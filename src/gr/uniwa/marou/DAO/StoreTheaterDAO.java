@@ -0,0 +1,237 @@
+package gr.uniwa.marou.DAO;
+
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.Theater;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ The StoreTheaterDAO class implements the TheaterDAO interface on top of a durable TheaterStore.
+ All reads and the seat checks are served by an in-memory TheaterDAOImpl, so they are as fast as with the in-memory
+ backend. Every successful change is then written to the store as the new availability of the seat categories it
+ touched, with the categories of a group booking written together in one batch. Categories are stored by code, so
+ the stored values still apply if the configuration renumbers the categories.
+ Each change is made and written while holding the locks of the seat categories it touches. A change that cannot be
+ written is undone in memory before those locks are released and reported to the caller with an UncheckedIOException,
+ so memory never runs ahead of the store, and a caller such as the write-behind cache can simply retry it.
+ The availability in the store is what the bookings in its ledger leave free. It is not loaded into memory, since
+ seats taken without the bookings that took them would have no owner; the server reads it when it starts, and checks
+ it against the availability the replayed ledger leaves.
+ */
+public class StoreTheaterDAO implements TheaterDAO, Closeable {
+
+    private final Theater theater;
+    private final TheaterDAOImpl memory;
+    private final TheaterStore store;
+
+    /**
+     Constructs a new StoreTheaterDAO, starting from the availability the theater was configured with, which is written
+     to the store. The server restores the state of an earlier run by replaying the ledger of the store, which takes
+     the seats again through this DAO; read the stored availability before constructing the DAO to check it.
+     @param theater the theater holding the prices and the configured availability
+     @param store the store to keep the availability in
+     @throws IOException if the store cannot be written
+     */
+    public StoreTheaterDAO(Theater theater, TheaterStore store) throws IOException {
+        this.theater = theater;
+        this.memory = new TheaterDAOImpl(theater);
+        this.store = store;
+        store.write(snapshot(theater.getCategories().all()));
+    }
+
+    @Override
+    public SeatCategories getCategories() {
+        return memory.getCategories();
+    }
+
+    @Override
+    public BigDecimal getPrice(SeatCategory category) {
+        return memory.getPrice(category);
+    }
+
+    @Override
+    public void updatePrices(Map<SeatCategory, BigDecimal> prices) {
+        memory.updatePrices(prices);
+    }
+
+    @Override
+    public Map<SeatCategory, Integer> getAvailability() {
+        return memory.getAvailability();
+    }
+
+    @Override
+    public int getAvailable(SeatCategory category) {
+        return memory.getAvailable(category);
+    }
+
+    @Override
+    public int getCapacity(SeatCategory category) {
+        return memory.getCapacity(category);
+    }
+
+    @Override
+    public int getOverbookAllowance(SeatCategory category) {
+        return memory.getOverbookAllowance(category);
+    }
+
+    /**
+     Sets the overbook allowance of the specified seat category. The allowance is not stored; it is derived again
+     from the sales of the running server.
+     @param category the category of the seat
+     @param seats the new overbook allowance
+     */
+    @Override
+    public void updateOverbookAllowance(SeatCategory category, int seats) {
+        memory.updateOverbookAllowance(category, seats);
+    }
+
+    @Override
+    public BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException {
+        return memory.calculatePrice(category, numberOfSeats);
+    }
+
+    /**
+     Changes the capacity of the specified seat category in memory and stores its new availability.
+     @param category the category of the seat
+     @param seats the number of seats to add or remove
+     @param cancel true to add the seats, false to remove them
+     @throws IllegalArgumentException if the booked seats of the seat category would not fit in its new capacity
+     @throws UncheckedIOException if the change could not be stored, in which case it is undone
+     */
+    @Override
+    public void updateAvailability(SeatCategory category, int seats, boolean cancel) {
+        change(List.of(category), () -> {
+            memory.updateAvailability(category, seats, cancel);
+            return true;
+        });
+    }
+
+    /**
+     Books the specified number of seats in memory and, if successful, stores the new availability of the seat category.
+     @param category the category of the seat
+     @param seats the number of seats to book
+     @param guestName the name of the guest booking the seats
+     @return true if the seats were successfully booked, false otherwise
+     @throws UncheckedIOException if the change could not be stored, in which case it is undone
+     */
+    @Override
+    public boolean book(SeatCategory category, int seats, String guestName) {
+        try {
+            return change(List.of(category), () -> memory.book(category, seats, guestName));
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     Cancels the specified number of seats in memory and, if successful, stores the new availability of the seat category.
+     @param category the category of the seat
+     @param numberOfSeats the number of seats to cancel
+     @param guestName the name of the guest canceling the seats
+     @return true if the seats were successfully canceled, false otherwise
+     @throws UncheckedIOException if the change could not be stored, in which case it is undone
+     */
+    @Override
+    public boolean cancel(SeatCategory category, int numberOfSeats, String guestName) {
+        try {
+            return change(List.of(category), () -> memory.cancel(category, numberOfSeats, guestName));
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     Books seats of several seat categories in memory as one all-or-nothing operation and, if successful, stores the new
+     availability of all those seat categories in one batch.
+     @param seats a map from each requested seat category to the number of seats to book
+     @param guestName the name of the guest booking the seats
+     @return true if all the seats were successfully booked, false if none were booked
+     @throws UncheckedIOException if the change could not be stored, in which case it is undone
+     */
+    @Override
+    public boolean bookAll(Map<SeatCategory, Integer> seats, String guestName) {
+        try {
+            return change(seats.keySet(), () -> memory.bookAll(seats, guestName));
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     Closes the underlying store.
+     @throws IOException if the store cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     Makes a change in memory and writes the new availability of the seat categories it touched to the store as one
+     batch. The locks of those categories are held from before the change until it has been written, so no other change
+     of them can come in between, and a change that cannot be written is undone by restoring the availability they had
+     before it, capacity included. The store is held while the values are read and written, so a later write never stores older values
+     than an earlier one.
+     @param categories the seat categories the change touches
+     @param change makes the change in memory, and returns whether it was made
+     @return the result of the change
+     @throws IllegalArgumentException if any of the seat categories is invalid
+     @throws UncheckedIOException if the store cannot be written, with any failure to undo the change suppressed
+     */
+    private boolean change(Collection<SeatCategory> categories, BooleanSupplier change) {
+        SeatCategory[] locked = memory.lock(categories);
+        try {
+            int[] capacity = new int[locked.length];
+            int[] available = new int[locked.length];
+            for (int i = 0; i < locked.length; i++) {
+                capacity[i] = theater.getCapacity(locked[i]);
+                available[i] = theater.getAvailable(locked[i]);
+            }
+            if (!change.getAsBoolean()) {
+                return false;
+            }
+            synchronized (store) {
+                try {
+                    store.write(snapshot(categories));
+                } catch (IOException e) {
+                    UncheckedIOException failure =
+                            new UncheckedIOException("Could not persist the availability of " + categories, e);
+                    try {
+                        for (int i = 0; i < locked.length; i++) {
+                            theater.setCapacity(locked[i], capacity[i]);
+                            theater.setAvailable(locked[i], available[i]);
+                        }
+                    } catch (RuntimeException undoFailure) {
+                        failure.addSuppressed(undoFailure);
+                    }
+                    throw failure;
+                }
+            }
+            return true;
+        } finally {
+            memory.unlock(locked);
+        }
+    }
+
+    private Map<String, Integer> snapshot(Collection<SeatCategory> categories) {
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        for (SeatCategory category : categories) {
+            batch.put(category.code(), theater.getAvailable(category));
+        }
+        return batch;
+    }
+}
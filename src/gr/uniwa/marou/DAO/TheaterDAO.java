@@ -1,6 +1,7 @@
 package gr.uniwa.marou.DAO;
 
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
 
 import java.math.BigDecimal;
 import java.rmi.RemoteException;
@@ -13,13 +14,27 @@ import java.util.Map;
  */
 public interface TheaterDAO {
 
-    BigDecimal getPrice(SeatType seatType);
+    SeatCategories getCategories();
 
-    void updateAvailability(SeatType seatType, int seats, boolean cancel);
-    boolean book(SeatType seatType, int seats, String guestName);
-    boolean cancel(SeatType seatType, int numberOfSeats, String guestName);
+    BigDecimal getPrice(SeatCategory category);
 
-    Map<SeatType, Integer> getAvailability() throws RemoteException;
+    void updatePrices(Map<SeatCategory, BigDecimal> prices);
 
-    BigDecimal calculatePrice(SeatType seatType, int numberOfSeats) throws RemoteException;
+    void updateAvailability(SeatCategory category, int seats, boolean cancel);
+    boolean book(SeatCategory category, int seats, String guestName);
+    boolean cancel(SeatCategory category, int numberOfSeats, String guestName);
+
+    boolean bookAll(Map<SeatCategory, Integer> seats, String guestName);
+
+    int getOverbookAllowance(SeatCategory category);
+
+    void updateOverbookAllowance(SeatCategory category, int seats);
+
+    Map<SeatCategory, Integer> getAvailability() throws RemoteException;
+
+    int getAvailable(SeatCategory category);
+
+    int getCapacity(SeatCategory category);
+
+    BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException;
 }
@@ -1,104 +1,179 @@
 package gr.uniwa.marou.DAO;
 
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
 import gr.uniwa.marou.model.Theater;
 
 import java.math.BigDecimal;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  The TheaterDAOImpl class implements the TheaterDAO interface.
  It provides functionality for retrieving the price and availability of seats, updating the availability of seats,
  and booking and canceling seats for the Theater class.
+ Every seat category is guarded by its own lock, so bookings for different zones do not block each other.
+ Operations that span several seat categories take the locks of those categories in the order of their ids,
+ which rules out deadlocks between concurrent group bookings.
+ A seat category with an overbook allowance accepts bookings until its availability would drop below minus the
+ allowance. The allowance is checked in the same locked check as the availability, so overbooking costs nothing
+ extra on the booking path and can never exceed the allowance. The capacity of a seat category, unlike its bookings,
+ is not stretched by the allowance: it can only be reduced while the seats booked still fit in it.
  */
 public class TheaterDAOImpl implements  TheaterDAO{
 
+    private static final Comparator<SeatCategory> BY_ID = Comparator.comparingInt(SeatCategory::id);
+
     private final Theater theater;
+    private final ReentrantLock[] zoneLocks;
 
     public TheaterDAOImpl(Theater theater){
         this.theater = theater;
+        this.zoneLocks = new ReentrantLock[theater.getCategories().size()];
+        for (int i = 0; i < zoneLocks.length; i++) {
+            zoneLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     Retrieves the seat categories of the theater.
+     @return the seat categories
+     */
+    @Override
+    public SeatCategories getCategories() {
+        return theater.getCategories();
+    }
+
+    /**
+     Retrieves the price of the specified seat category.
+     @param category the category of the seat
+     @return the price of the specified seat category
+     @throws IllegalArgumentException if the seat category is invalid
+     */
+    @Override
+    public BigDecimal getPrice(SeatCategory category) {
+        checkCategory(category);
+        return theater.getPrice(category);
     }
 
     /**
-     Retrieves the price of the specified seat type.
-     @param seatType the type of the seat
-     @return the price of the specified seat type
+     Replaces the prices of all seat categories at once. Readers see either all the old prices or all the new ones.
+     @param prices the new price of each seat category
      */
     @Override
-    public BigDecimal getPrice(SeatType seatType) {
-        return theater.getPrices().get(seatType);
+    public void updatePrices(Map<SeatCategory, BigDecimal> prices) {
+        theater.setPrices(prices);
     }
 
     /**
-     Retrieves the availability of all seat types.
-     @return a map that maps each seat type to its availability
+     Retrieves the availability of all seat categories.
+     @return a snapshot that maps each seat category to its availability
      */
     @Override
-    public Map<SeatType, Integer> getAvailability() {
+    public Map<SeatCategory, Integer> getAvailability() {
         return theater.getAvailability();
     }
 
     /**
-     * Calculates the total price for the given number of seats of the specified type.
+     Retrieves the number of available seats of the specified seat category.
+     @param category the category of the seat
+     @return the number of available seats, below zero if the category is overbooked
+     */
+    @Override
+    public int getAvailable(SeatCategory category) {
+        return theater.getAvailable(category);
+    }
+
+    /**
+     * Calculates the total price for the given number of seats of the specified category.
      *
-     * @param seatType the type of seat to calculate the price for
+     * @param category the category of seat to calculate the price for
      * @param numberOfSeats the number of seats to calculate the price for
-     * @return the total price for the given number of seats of the specified type
-     * @throws RemoteException if there is a problem accessing the remote server
-     * @throws IllegalArgumentException if the given seat type is not valid
+     * @return the total price for the given number of seats of the specified category
+     * @throws RemoteException if the given seat category is not valid
      */
     @Override
-    public BigDecimal calculatePrice(SeatType seatType, int numberOfSeats) throws RemoteException {
-        BigDecimal pricePerSeat = theater.getPrices().get(seatType);
-        if (pricePerSeat == null) {
-            throw new RemoteException("Invalid seat type: " + seatType);
+    public BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException {
+        if (!theater.getCategories().contains(category)) {
+            throw new RemoteException("Invalid seat type: " + category);
         }
-        return pricePerSeat.multiply(BigDecimal.valueOf(numberOfSeats));
+        return theater.getPrice(category, numberOfSeats);
+    }
+
+    /**
+     Retrieves the number of seats of the specified seat category.
+     @param category the category of the seat
+     @return the capacity of the seat category
+     @throws IllegalArgumentException if the seat category is invalid
+     */
+    @Override
+    public int getCapacity(SeatCategory category) {
+        checkCategory(category);
+        return theater.getCapacity(category);
     }
 
     /**
-     Updates the availability of the specified seat type with the specified number of seats.
-     @param seatType the type of the seat
-     @param seats the number of seats to update the availability with
-     @throws IllegalArgumentException if the number of seats is not positive, or if the seat type is invalid, or if there
-     are not enough seats available for the specified seat type
+     Changes the capacity of the specified seat category by the specified number of seats, and its availability by as
+     much. A reduction is checked against the seats booked, under the lock of the category, and rejected if they would
+     no longer fit in the new capacity.
+     @param category the category of the seat
+     @param seats the number of seats to add or remove
+     @param cancel true to add the seats, false to remove them
+     @throws IllegalArgumentException if the number of seats is not positive, or if the seat category is invalid, or if
+     the booked seats of the seat category would not fit in its new capacity
      */
     @Override
-    public synchronized void updateAvailability(SeatType seatType, int seats, boolean cancel) {
+    public void updateAvailability(SeatCategory category, int seats, boolean cancel) {
         if (seats <= 0) {
             throw new IllegalArgumentException("seatCount must be positive");
         }
-        Map<SeatType, Integer> availability = getAvailability();
-        if (!availability.containsKey(seatType)) {
-            throw new IllegalArgumentException("Invalid seatType: " + seatType);
-        }
-        int currentAvailability = availability.get(seatType);
-        int newAvailability = cancel ? currentAvailability + seats : currentAvailability - seats;
-        if (newAvailability < 0) {
-            throw new IllegalArgumentException("Not enough seats available for seatType: " + seatType);
+        ReentrantLock lock = lockOf(category);
+        lock.lock();
+        try {
+            int capacity = theater.getCapacity(category);
+            int newCapacity = cancel ? capacity + seats : capacity - seats;
+            int booked = capacity - theater.getAvailable(category);
+            if (booked > newCapacity) {
+                throw new IllegalArgumentException(category + " has " + booked + " booked seats, more than the new capacity of "
+                        + newCapacity);
+            }
+            theater.setCapacity(category, newCapacity);
+            theater.setAvailable(category, theater.getAvailable(category) + newCapacity - capacity);
+        } finally {
+            lock.unlock();
         }
-        availability.put(seatType, newAvailability);
     }
 
 
     /**
-     Books the specified number of seats of the specified seat type for the specified guest name.
-     @param seatType the type of the seat
+     Books the specified number of seats of the specified seat category for the specified guest name.
+     @param category the category of the seat
      @param seats the number of seats to book
      @param guestName the name of the guest booking the seats
      @return true if the seats were successfully booked, false otherwise
      */
     @Override
-    public synchronized boolean book(SeatType seatType, int seats, String guestName) {
+    public boolean book(SeatCategory category, int seats, String guestName) {
         try {
-            int availableSeats = theater.getAvailability().get(seatType);
-            if (availableSeats >= seats) {
-                updateAvailability(seatType, seats,false);
-                return true;
+            if (seats <= 0) {
+                throw new IllegalArgumentException("seatCount must be positive");
+            }
+            ReentrantLock lock = lockOf(category);
+            lock.lock();
+            try {
+                if (bookable(category) >= seats) {
+                    theater.setAvailable(category, theater.getAvailable(category) - seats);
+                    return true;
+                }
+                return false;
+            } finally {
+                lock.unlock();
             }
-            return false;
         } catch (IllegalArgumentException ex) {
             ex.printStackTrace();
             return false;
@@ -106,20 +181,169 @@ public class TheaterDAOImpl implements  TheaterDAO{
     }
 
     /**
-     Cancels the specified number of seats of the specified seat type for the specified guest name.
-     @param seatType the type of the seat
+     Cancels the specified number of seats of the specified seat category for the specified guest name. The seats are
+     given back only if at least that many seats of the category are booked.
+     @param category the category of the seat
      @param numberOfSeats the number of seats to cancel
      @param guestName the name of the guest canceling the seats
      @return true if the seats were successfully canceled, false otherwise
      */
     @Override
-    public synchronized boolean cancel(SeatType seatType, int numberOfSeats, String guestName) {
+    public boolean cancel(SeatCategory category, int numberOfSeats, String guestName) {
         try {
-            updateAvailability(seatType, numberOfSeats, true);
-            return true;
+            if (numberOfSeats <= 0) {
+                throw new IllegalArgumentException("seatCount must be positive");
+            }
+            ReentrantLock lock = lockOf(category);
+            lock.lock();
+            try {
+                int available = theater.getAvailable(category);
+                if (theater.getCapacity(category) - available < numberOfSeats) {
+                    throw new IllegalArgumentException("Only " + (theater.getCapacity(category) - available) + " "
+                            + category + " seats are booked, fewer than the " + numberOfSeats + " to cancel");
+                }
+                theater.setAvailable(category, available + numberOfSeats);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     Books seats of several seat categories for the specified guest name as a single all-or-nothing operation.
+     The locks of the requested categories are taken in the order of their ids, the availability of every category
+     is checked, and only if all of them have enough seats are the seats taken from each of them.
+     @param seats a map from each requested seat category to the number of seats to book
+     @param guestName the name of the guest booking the seats
+     @return true if all the seats were successfully booked, false if none were booked
+     */
+    @Override
+    public boolean bookAll(Map<SeatCategory, Integer> seats, String guestName) {
+        try {
+            for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+                if (entry.getValue() == null || entry.getValue() <= 0) {
+                    throw new IllegalArgumentException("seatCount must be positive");
+                }
+            }
+            SeatCategory[] categories = lock(seats.keySet());
+            try {
+                for (SeatCategory category : categories) {
+                    if (bookable(category) < seats.get(category)) {
+                        return false;
+                    }
+                }
+                for (SeatCategory category : categories) {
+                    theater.setAvailable(category, theater.getAvailable(category) - seats.get(category));
+                }
+                return true;
+            } finally {
+                unlock(categories);
+            }
         } catch (IllegalArgumentException ex) {
             ex.printStackTrace();
             return false;
         }
     }
+
+    /**
+     Retrieves the number of seats of the specified seat category that may be sold beyond its capacity.
+     @param category the category of the seat
+     @return the overbook allowance of the seat category
+     @throws IllegalArgumentException if the seat category is invalid
+     */
+    @Override
+    public int getOverbookAllowance(SeatCategory category) {
+        checkCategory(category);
+        return theater.getOverbookAllowance(category);
+    }
+
+    /**
+     Sets the number of seats of the specified seat category that may be sold beyond its capacity.
+     @param category the category of the seat
+     @param seats the new overbook allowance, 0 to turn overbooking off
+     @throws IllegalArgumentException if the number of seats is negative, or if the seat category is invalid
+     */
+    @Override
+    public void updateOverbookAllowance(SeatCategory category, int seats) {
+        if (seats < 0) {
+            throw new IllegalArgumentException("Overbook allowance must not be negative");
+        }
+        checkCategory(category);
+        theater.setOverbookAllowance(category, seats);
+    }
+
+    /**
+     Takes the locks of the specified seat categories in the order of their ids. Other DAOs of this package take them
+     too, to keep what they do with the availability of those categories atomic with the change itself.
+     @param categories the seat categories to lock
+     @return the locked seat categories, ordered by id, to pass to {@link #unlock(SeatCategory[])}
+     @throws IllegalArgumentException if any of the seat categories is invalid, in which case none is locked
+     */
+    SeatCategory[] lock(Collection<SeatCategory> categories) {
+        SeatCategory[] ordered = categories.toArray(new SeatCategory[categories.size()]);
+        for (SeatCategory category : ordered) {
+            checkCategory(category);
+        }
+        Arrays.sort(ordered, BY_ID);
+        for (SeatCategory category : ordered) {
+            zoneLocks[category.id()].lock();
+        }
+        return ordered;
+    }
+
+    /**
+     Takes the lock of the specified seat category, like {@link #lock(Collection)} does for several.
+     @param category the seat category to lock
+     @throws IllegalArgumentException if the seat category is invalid
+     */
+    void lock(SeatCategory category) {
+        lockOf(category).lock();
+    }
+
+    /**
+     Releases the lock taken by {@link #lock(SeatCategory)}.
+     @param category the locked seat category
+     */
+    void unlock(SeatCategory category) {
+        zoneLocks[category.id()].unlock();
+    }
+
+    /**
+     Releases the locks taken by {@link #lock(Collection)}.
+     @param categories the locked seat categories
+     */
+    void unlock(SeatCategory[] categories) {
+        for (int i = categories.length - 1; i >= 0; i--) {
+            zoneLocks[categories[i].id()].unlock();
+        }
+    }
+
+    /**
+     Returns the number of seats of the specified seat category that can still be booked, counting its overbook
+     allowance. Callers hold the lock of the category.
+     */
+    private int bookable(SeatCategory category) {
+        return theater.getAvailable(category) + theater.getOverbookAllowance(category);
+    }
+
+    /**
+     Returns the lock that guards the specified seat category.
+     @param category the category of the seat
+     @return the lock of the seat category
+     @throws IllegalArgumentException if the seat category is invalid
+     */
+    private ReentrantLock lockOf(SeatCategory category) {
+        checkCategory(category);
+        return zoneLocks[category.id()];
+    }
+
+    private void checkCategory(SeatCategory category) {
+        if (!theater.getCategories().contains(category)) {
+            throw new IllegalArgumentException("Invalid seatType: " + category);
+        }
+    }
 }
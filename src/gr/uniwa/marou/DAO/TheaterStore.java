@@ -0,0 +1,26 @@
+package gr.uniwa.marou.DAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ The TheaterStore interface is implemented by the durable stores that a TheaterDAO can keep its state in.
+ The store holds the latest availability of each seat category, keyed by the code of the category; writes take a batch
+ of categories at once, so that a change that spans several categories is written in a single operation.
+ The store also keeps the ledger of the theater, as an append-only list of records that is read back in order when
+ the server starts; records that belong together, such as the bookings of a group, are appended in one write. Writing a batch of availability makes every ledger record appended before it durable as well, so
+ the stored availability is never ahead of the bookings that explain it.
+ */
+public interface TheaterStore extends Closeable {
+
+    Map<String, Integer> load() throws IOException;
+
+    void write(Map<String, Integer> availability) throws IOException;
+
+    List<String> loadLedger() throws IOException;
+
+    void appendLedger(List<String> records) throws IOException;
+}
@@ -0,0 +1,331 @@
+package gr.uniwa.marou.DAO;
+
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.Theater;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.rmi.RemoteException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ The WriteBehindTheaterDAO class is a caching decorator that implements the TheaterDAO interface in front of a slower,
+ durable TheaterDAO.
+ All reads and seat checks are served from an in-memory copy of the theater. Successful bookings and cancellations
+ are not written through one by one; instead the net change of each seat category is accumulated, so any number of
+ them between two flushes reach the backing DAO as a single booking or cancellation.
+ Capacity changes are rare and are checked against the seats booked, so they are written through: the pending
+ changes of the seat category are flushed first, under its lock, so the backing DAO checks the change against the
+ same bookings as the in-memory copy.
+ Flushes run on a background thread, every flush interval and as soon as the number of pending changes reaches the
+ batch size, which bounds the changes that can be lost if the process dies. A change the backing DAO fails to write,
+ whether it rejects it or cannot store it, is kept and retried by the next flush. Closing the DAO drains the pending
+ changes before closing the backing DAO, and reports the changes it could not write.
+ */
+public class WriteBehindTheaterDAO implements TheaterDAO, Closeable {
+
+    private static final String WRITER = "write-behind";
+
+    private final TheaterDAO backing;
+    private final TheaterDAOImpl memory;
+    private final int batchSize;
+    private final AtomicIntegerArray pendingSeats;
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     Constructs a new WriteBehindTheaterDAO, loading the seat categories, prices and availability from the backing DAO.
+     @param backing the durable DAO to write the changes to
+     @param batchSize the number of pending changes that triggers a flush
+     @param flushIntervalMillis the maximum time between flushes, in milliseconds
+     @throws RemoteException if the prices cannot be read from the backing DAO
+     @throws IllegalArgumentException if the batch size or the flush interval is not positive
+     */
+    public WriteBehindTheaterDAO(TheaterDAO backing, int batchSize, long flushIntervalMillis) throws RemoteException {
+        if (batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("batchSize and flushIntervalMillis must be positive");
+        }
+        SeatCategories categories = backing.getCategories();
+        Map<SeatCategory, BigDecimal> prices = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            prices.put(category, backing.getPrice(category));
+        }
+        this.backing = backing;
+        Theater theater = new Theater("MyTheater", categories, prices, backing.getAvailability());
+        for (SeatCategory category : categories.all()) {
+            theater.setCapacity(category, backing.getCapacity(category));
+        }
+        this.memory = new TheaterDAOImpl(theater);
+        this.pendingSeats = new AtomicIntegerArray(categories.size());
+        this.batchSize = batchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "theater-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public SeatCategories getCategories() {
+        return memory.getCategories();
+    }
+
+    @Override
+    public BigDecimal getPrice(SeatCategory category) {
+        return memory.getPrice(category);
+    }
+
+    /**
+     Replaces the prices of all seat categories, both in memory and in the backing DAO.
+     @param prices the new price of each seat category
+     */
+    @Override
+    public void updatePrices(Map<SeatCategory, BigDecimal> prices) {
+        memory.updatePrices(prices);
+        backing.updatePrices(prices);
+    }
+
+    @Override
+    public Map<SeatCategory, Integer> getAvailability() {
+        return memory.getAvailability();
+    }
+
+    @Override
+    public int getAvailable(SeatCategory category) {
+        return memory.getAvailable(category);
+    }
+
+    @Override
+    public int getCapacity(SeatCategory category) {
+        return memory.getCapacity(category);
+    }
+
+    @Override
+    public int getOverbookAllowance(SeatCategory category) {
+        return memory.getOverbookAllowance(category);
+    }
+
+    /**
+     Sets the overbook allowance of the specified seat category. The allowance is enforced by the in-memory copy; the
+     backing DAO only mirrors it, so its allowance never shrinks, and flushing a category that was overbooked under a
+     larger allowance cannot be rejected.
+     @param category the category of the seat
+     @param seats the new overbook allowance
+     */
+    @Override
+    public void updateOverbookAllowance(SeatCategory category, int seats) {
+        memory.updateOverbookAllowance(category, seats);
+        if (seats > backing.getOverbookAllowance(category)) {
+            backing.updateOverbookAllowance(category, seats);
+        }
+    }
+
+    @Override
+    public BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException {
+        return memory.calculatePrice(category, numberOfSeats);
+    }
+
+    /**
+     Changes the capacity of the specified seat category in memory and writes it through to the backing DAO, after the
+     pending changes of the seat category. If the backing DAO fails, the change is undone in memory.
+     @param category the category of the seat
+     @param seats the number of seats to add or remove
+     @param cancel true to add the seats, false to remove them
+     @throws IllegalArgumentException if the booked seats of the seat category would not fit in its new capacity
+     @throws IllegalStateException if the pending changes of the seat category could not be written
+     */
+    @Override
+    public void updateAvailability(SeatCategory category, int seats, boolean cancel) {
+        memory.lock(category);
+        try {
+            synchronized (this) {
+                if (!flush(category)) {
+                    throw new IllegalStateException("Could not write the pending " + category
+                            + " changes before changing its capacity");
+                }
+                memory.updateAvailability(category, seats, cancel);
+                try {
+                    backing.updateAvailability(category, seats, cancel);
+                } catch (RuntimeException e) {
+                    try {
+                        memory.updateAvailability(category, seats, !cancel);
+                    } catch (RuntimeException undoFailure) {
+                        e.addSuppressed(undoFailure);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            memory.unlock(category);
+        }
+    }
+
+    /**
+     Books the specified number of seats in memory and, if successful, queues the change for the backing DAO.
+     @param category the category of the seat
+     @param seats the number of seats to book
+     @param guestName the name of the guest booking the seats
+     @return true if the seats were successfully booked, false otherwise
+     */
+    @Override
+    public boolean book(SeatCategory category, int seats, String guestName) {
+        try {
+            memory.lock(category);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        try {
+            boolean success = memory.book(category, seats, guestName);
+            if (success) {
+                enqueue(category, -seats);
+            }
+            return success;
+        } finally {
+            memory.unlock(category);
+        }
+    }
+
+    /**
+     Cancels the specified number of seats in memory and, if successful, queues the change for the backing DAO.
+     @param category the category of the seat
+     @param numberOfSeats the number of seats to cancel
+     @param guestName the name of the guest canceling the seats
+     @return true if the seats were successfully canceled, false otherwise
+     */
+    @Override
+    public boolean cancel(SeatCategory category, int numberOfSeats, String guestName) {
+        try {
+            memory.lock(category);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        try {
+            boolean success = memory.cancel(category, numberOfSeats, guestName);
+            if (success) {
+                enqueue(category, numberOfSeats);
+            }
+            return success;
+        } finally {
+            memory.unlock(category);
+        }
+    }
+
+    /**
+     Books seats of several seat categories in memory as one all-or-nothing operation and, if successful, queues the
+     changes for the backing DAO.
+     @param seats a map from each requested seat category to the number of seats to book
+     @param guestName the name of the guest booking the seats
+     @return true if all the seats were successfully booked, false if none were booked
+     */
+    @Override
+    public boolean bookAll(Map<SeatCategory, Integer> seats, String guestName) {
+        SeatCategory[] locked;
+        try {
+            locked = memory.lock(seats.keySet());
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        try {
+            boolean success = memory.bookAll(seats, guestName);
+            if (success) {
+                for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+                    enqueue(entry.getKey(), -entry.getValue());
+                }
+            }
+            return success;
+        } finally {
+            memory.unlock(locked);
+        }
+    }
+
+    /**
+     Writes the net pending change of every seat category to the backing DAO, as a booking or a cancellation of that
+     many seats. A change the backing DAO rejects or cannot store is put back, so that it is retried by the next
+     flush; the backing DAO undoes a change it cannot store, so the retry does not apply it twice.
+     Only the changes counted before their seats are taken are subtracted from the pending changes, so a change made
+     while the flush runs still counts towards the next batch.
+     @return true if every pending change was written
+     */
+    public synchronized boolean flush() {
+        flushRequested.set(false);
+        int flushed = pendingChanges.get();
+        boolean written = true;
+        for (SeatCategory category : memory.getCategories().all()) {
+            written &= flush(category);
+        }
+        pendingChanges.addAndGet(-flushed);
+        return written;
+    }
+
+    private synchronized boolean flush(SeatCategory category) {
+        int seats = pendingSeats.getAndSet(category.id(), 0);
+        if (seats == 0) {
+            return true;
+        }
+        try {
+            boolean written = seats > 0 ? backing.cancel(category, seats, WRITER) : backing.book(category, -seats, WRITER);
+            if (written) {
+                return true;
+            }
+            System.out.println("Could not write " + category + " availability behind: the backing DAO rejected it");
+        } catch (RuntimeException e) {
+            System.out.println("Could not write " + category + " availability behind: " + e.getMessage());
+        }
+        pendingSeats.addAndGet(category.id(), seats);
+        return false;
+    }
+
+    /**
+     Stops the background flushes, drains every pending change to the backing DAO and closes the backing DAO.
+     @throws IOException if a pending change could not be written, or if the backing DAO cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (!flush()) {
+                throw new IOException("Could not write the pending availability changes " + pendingSeats
+                        + " to the backing DAO");
+            }
+        } finally {
+            if (backing instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     Adds a change to the pending change of its seat category, and wakes up the flusher once enough changes are pending.
+     */
+    private void enqueue(SeatCategory category, int seats) {
+        pendingSeats.addAndGet(category.id(), seats);
+        if (pendingChanges.incrementAndGet() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // The DAO is closing; the final drain writes this change
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.AvailabilityDelta;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.util.Map;
+
+/**
+ The AvailabilityFeed is the availability view of the booking ledger that also serves the availability of the theater
+ to clients that poll it, such as lobby displays, as deltas against the version they last saw.
+ Every event that changes the availability of a seat category increments the version, and the id of the category
+ is stored in a ring buffer under that version. A client that passes the current version is told that nothing has
+ been modified; a client that is behind by fewer versions than the size of the ring gets the counters of the categories
+ that changed since; any other client gets every counter.
+ The counters are those of the view. After every change, the new version and counters are published at once as the
+ answer for clients that start from scratch, so polling never takes the lock the ledger holds while it records a
+ booking, and any number of clients are served the same object. The answer for clients that are up to date is created
+ by the first of them to poll a version, so a change that nobody polls costs only the counters.
+ Versions start from the time the feed was created, in microseconds, so a version seen before a restart of the
+ server is older than every version after it, and is answered with every counter.
+ */
+public class AvailabilityFeed extends AvailabilityView {
+
+    private static final int[] NO_CATEGORIES = new int[0];
+
+    private final int[] categoryIds;
+    private final int[] changedCategories;
+    private final long baseVersion;
+    private volatile AvailabilityDelta complete;
+    private volatile AvailabilityDelta notModified;
+
+    /**
+     Constructs a new AvailabilityFeed.
+     @param initialAvailability the number of seats of every seat category before the first event of the ledger
+     @param size the number of recent changes kept in the ring buffer
+     @throws IllegalArgumentException if the size is not positive
+     */
+    public AvailabilityFeed(Map<SeatCategory, Integer> initialAvailability, int size) {
+        super(initialAvailability);
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.categoryIds = new int[initialAvailability.size()];
+        for (int id = 0; id < categoryIds.length; id++) {
+            categoryIds[id] = id;
+        }
+        this.changedCategories = new int[size];
+        this.baseVersion = System.currentTimeMillis() * 1_000;
+        publish(baseVersion);
+    }
+
+    @Override
+    protected void changed(SeatCategory category) {
+        long version = complete.version() + 1;
+        // The slot is written before the version that refers to it is published
+        changedCategories[(int) (version % changedCategories.length)] = category.id();
+        publish(version);
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        publish(baseVersion);
+    }
+
+    private void publish(long version) {
+        complete = new AvailabilityDelta(version, true, categoryIds, availableSeats());
+    }
+
+    private AvailabilityDelta notModified(long version) {
+        AvailabilityDelta answer = notModified;
+        if (answer == null || answer.version() != version) {
+            // Clients racing on a new version may each create an answer; the one stored last is shared
+            answer = new AvailabilityDelta(version, false, NO_CATEGORIES, NO_CATEGORIES);
+            notModified = answer;
+        }
+        return answer;
+    }
+
+    /**
+     Returns the current version of the availability.
+     @return the version
+     */
+    public long version() {
+        return complete.version();
+    }
+
+    /**
+     Returns the changes of the availability since the given version.
+     @param sinceVersion the version the client last saw, or any negative number if it has seen none
+     @return a delta with no categories if nothing changed, the changed categories if the client is behind by fewer
+     versions than the size of the ring, or every category otherwise
+     */
+    public AvailabilityDelta changesSince(long sinceVersion) {
+        AvailabilityDelta current = complete;
+        long version = current.version();
+        if (sinceVersion == version) {
+            return notModified(version);
+        }
+        if (sinceVersion < baseVersion || sinceVersion > version || version - sinceVersion >= changedCategories.length) {
+            return current;
+        }
+        boolean[] changed = new boolean[categoryIds.length];
+        int count = 0;
+        for (long v = sinceVersion + 1; v <= version && count < changed.length; v++) {
+            int zone = changedCategories[(int) (v % changedCategories.length)];
+            if (!changed[zone]) {
+                changed[zone] = true;
+                count++;
+            }
+        }
+        // The slots read may have been reused by changes published meanwhile; the version answered is still consistent.
+        // A change writes its slot before it is published, so the slot after the last one read is reused only once
+        // the version published is a whole ring ahead of the client
+        if (complete.version() - sinceVersion >= changedCategories.length) {
+            return current;
+        }
+        int[] availability = current.seats();
+        int[] ids = new int[count];
+        int[] seats = new int[count];
+        for (int zone = 0, i = 0; zone < changed.length; zone++) {
+            if (changed[zone]) {
+                ids[i] = zone;
+                seats[i++] = availability[zone];
+            }
+        }
+        return new AvailabilityDelta(version, false, ids, seats);
+    }
+}
@@ -0,0 +1,74 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The AvailabilityView derives the number of available seats of each seat category from the seats the theater
+ started with and the bookings, cancellations and capacity changes recorded in the ledger.
+ */
+public class AvailabilityView implements LedgerView {
+
+    private final Map<SeatCategory, Integer> initialAvailability;
+    private final int[] takenSeats;
+
+    /**
+     Constructs a new AvailabilityView.
+     @param initialAvailability the number of seats of every seat category before the first event of the ledger
+     */
+    public AvailabilityView(Map<SeatCategory, Integer> initialAvailability) {
+        this.initialAvailability = new LinkedHashMap<>(initialAvailability);
+        this.takenSeats = new int[initialAvailability.size()];
+    }
+
+    @Override
+    public synchronized void apply(BookingEvent event) {
+        if (event.type().isBooking()) {
+            takenSeats[event.category().id()] += event.numberOfSeats();
+        } else if (event.type() == EventType.CANCELLED || event.type() == EventType.CAPACITY_CHANGED) {
+            takenSeats[event.category().id()] -= event.numberOfSeats();
+        } else {
+            return;
+        }
+        changed(event.category());
+    }
+
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(takenSeats, 0);
+    }
+
+    /**
+     Called after an event has changed the availability of a seat category, while the view is still locked.
+     @param category the seat category that changed
+     */
+    protected void changed(SeatCategory category) {
+    }
+
+    /**
+     Returns the number of available seats of each seat category.
+     @return a map that maps each seat category to its availability
+     */
+    public synchronized Map<SeatCategory, Integer> getAvailability() {
+        Map<SeatCategory, Integer> availability = new LinkedHashMap<>();
+        for (Map.Entry<SeatCategory, Integer> entry : initialAvailability.entrySet()) {
+            availability.put(entry.getKey(), entry.getValue() - takenSeats[entry.getKey().id()]);
+        }
+        return availability;
+    }
+
+    /**
+     Returns the number of available seats of each seat category, indexed by the id of the category.
+     @return a new array with the availability of every seat category
+     */
+    protected synchronized int[] availableSeats() {
+        int[] availability = new int[takenSeats.length];
+        for (Map.Entry<SeatCategory, Integer> entry : initialAvailability.entrySet()) {
+            availability[entry.getKey().id()] = entry.getValue() - takenSeats[entry.getKey().id()];
+        }
+        return availability;
+    }
+}
@@ -0,0 +1,41 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ The BookingEvent record is a single immutable entry of the booking ledger.
+ @param sequence the position of the event in the ledger, starting from 0
+ @param timestamp the time the event was recorded, in milliseconds since the epoch
+ @param type the kind of action the event records
+ @param guestId the id of the guest in the GuestDirectory of the ledger, or -1 for actions not made by a guest
+ @param category the seat category the action concerns
+ @param numberOfSeats the number of seats the action concerns; for capacity changes, the signed change
+ @param amount the price of the seats at the time of the action, or zero for waiting list entries
+ */
+public record BookingEvent(long sequence, long timestamp, EventType type, int guestId, SeatCategory category,
+                           int numberOfSeats, BigDecimal amount) implements Serializable {
+
+    /**
+     Returns the amount in cents, truncating any further decimals. Amounts of up to thirteen digits and two decimals,
+     which all prices are, are converted through a double, exactly and without creating BigDecimal objects.
+     @return the amount in cents
+     */
+    public long amountCents() {
+        return cents(amount);
+    }
+
+    /**
+     Converts an amount to cents, truncating any further decimals, the way {@link #amountCents()} does.
+     @param amount the amount
+     @return the amount in cents
+     */
+    public static long cents(BigDecimal amount) {
+        if (amount.scale() >= 0 && amount.scale() <= 2 && amount.precision() <= 13) {
+            return Math.round(amount.doubleValue() * 100);
+        }
+        return amount.movePointRight(2).longValue();
+    }
+}
@@ -0,0 +1,177 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.GuestDirectory;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The BookingLedger is the in-memory, append-only history of every booking, cancellation and waiting list action.
+ Each action is recorded as an immutable BookingEvent and immediately applied to the registered views, in ledger
+ order. Because the ledger keeps every event, a view registered later is brought up to date by replaying the
+ history, and any view can be replayed up to a point in time to answer audit questions about the past.
+ If a LedgerJournal is set, new events are written to it before they are recorded, so an event the journal cannot
+ store is neither kept nor applied to any view, and the caller can undo the action it describes.
+ */
+public class BookingLedger {
+
+    private final GuestDirectory guestDirectory;
+    private final List<BookingEvent> events = new ArrayList<>();
+    private final List<LedgerView> views = new ArrayList<>();
+    private LedgerJournal journal;
+    private long lastTimestamp;
+
+    /**
+     Constructs a new, empty BookingLedger.
+     @param guestDirectory the directory that assigns the guest ids recorded in the events
+     */
+    public BookingLedger(GuestDirectory guestDirectory) {
+        this.guestDirectory = guestDirectory;
+    }
+
+    /**
+     Records an action as a new event and applies it to every registered view.
+     @param type the kind of action
+     @param guestName the name of the guest, or null for actions not made by a guest
+     @param category the seat category the action concerns
+     @param numberOfSeats the number of seats the action concerns
+     @param amount the price of the seats, or zero if no money is involved
+     @return the recorded event
+     @throws java.io.UncheckedIOException if the journal cannot store the event, in which case it is not recorded
+     */
+    public BookingEvent append(EventType type, String guestName, SeatCategory category, int numberOfSeats,
+                               BigDecimal amount) {
+        return append(type, guestName, category, numberOfSeats, amount, System.currentTimeMillis());
+    }
+
+    /**
+     Records an action that happened at the given time, such as an action read back from a LedgerJournal, as a new
+     event and applies it to every registered view.
+     @param type the kind of action
+     @param guestName the name of the guest, or null for actions not made by a guest
+     @param category the seat category the action concerns
+     @param numberOfSeats the number of seats the action concerns
+     @param amount the price of the seats, or zero if no money is involved
+     @param timestamp the time of the action, in milliseconds since the epoch
+     @return the recorded event
+     @throws java.io.UncheckedIOException if the journal cannot store the event, in which case it is not recorded
+     */
+    public synchronized BookingEvent append(EventType type, String guestName, SeatCategory category, int numberOfSeats,
+                                            BigDecimal amount, long timestamp) {
+        // Timestamps never go backwards, so the ledger is ordered by time as well as by sequence
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        BookingEvent event = new BookingEvent(events.size(), lastTimestamp, type,
+                guestName == null ? -1 : guestDirectory.intern(guestName), category, numberOfSeats, amount);
+        if (journal != null) {
+            journal.write(List.of(event));
+        }
+        record(event);
+        return event;
+    }
+
+    /**
+     Records the same action of a guest on several seat categories, such as a group booking, as one new event for
+     each category. The journal stores the events in one write before any of them is recorded, so either all of
+     them are recorded or none are.
+     @param type the kind of action
+     @param guestName the name of the guest
+     @param seats the number of seats of each seat category the action concerns
+     @param amounts the price of the seats of each seat category, indexed by the id of the category
+     @throws java.io.UncheckedIOException if the journal cannot store the events, in which case none is recorded
+     */
+    public synchronized void appendAll(EventType type, String guestName, Map<SeatCategory, Integer> seats,
+                                       BigDecimal[] amounts) {
+        lastTimestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+        int guestId = guestDirectory.intern(guestName);
+        BookingEvent[] batch = new BookingEvent[seats.size()];
+        int i = 0;
+        for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+            batch[i] = new BookingEvent(events.size() + i, lastTimestamp, type, guestId, entry.getKey(),
+                    entry.getValue(), amounts[entry.getKey().id()]);
+            i++;
+        }
+        if (journal != null) {
+            journal.write(Arrays.asList(batch));
+        }
+        for (BookingEvent event : batch) {
+            record(event);
+        }
+    }
+
+    private void record(BookingEvent event) {
+        events.add(event);
+        // Indexed, so that appending an event does not create an iterator
+        for (int i = 0; i < views.size(); i++) {
+            views.get(i).apply(event);
+        }
+    }
+
+    /**
+     Sets the journal that every new event is written to before it is recorded. Set it once the events it already
+     holds have been replayed into the ledger.
+     @param journal the journal
+     */
+    public synchronized void setJournal(LedgerJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     Registers a view. The view is reset and replayed from the start of the ledger, and from then on
+     receives every new event.
+     @param view the view to register
+     */
+    public synchronized void register(LedgerView view) {
+        rebuild(view);
+        views.add(view);
+    }
+
+    /**
+     Rebuilds a view from scratch by resetting it and replaying the whole ledger.
+     @param view the view to rebuild
+     */
+    public synchronized void rebuild(LedgerView view) {
+        replay(view, Long.MAX_VALUE);
+    }
+
+    /**
+     Resets a view and replays every event recorded at or before the given time, so that the view shows
+     the state of the theater at that moment.
+     @param view the view to replay the events into
+     @param timestamp the time to stop at, in milliseconds since the epoch
+     */
+    public synchronized void replay(LedgerView view, long timestamp) {
+        view.reset();
+        for (BookingEvent event : events) {
+            if (event.timestamp() > timestamp) {
+                break;
+            }
+            view.apply(event);
+        }
+    }
+
+    /**
+     Returns the events recorded from the given sequence number onwards.
+     @param fromSequence the sequence number of the first event to return
+     @return a copy of the requested events, in ledger order
+     */
+    public synchronized List<BookingEvent> events(long fromSequence) {
+        int from = (int) Math.max(0, Math.min(fromSequence, events.size()));
+        return new ArrayList<>(events.subList(from, events.size()));
+    }
+
+    /**
+     Returns the number of events in the ledger.
+     @return the number of events
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    public GuestDirectory getGuestDirectory() {
+        return guestDirectory;
+    }
+}
@@ -0,0 +1,31 @@
+package gr.uniwa.marou.Ledger;
+
+/**
+ An enum representing the kinds of actions recorded in the booking ledger.
+ */
+public enum EventType {
+    BOOKED("Booked"),
+    CANCELLED("Cancelled"),
+    WAITLISTED("Added to the waiting list"),
+    PROMOTED("Booked from the waiting list"),
+    CAPACITY_CHANGED("Capacity changed");
+
+    private final String name;
+
+    EventType(String name){
+        this.name = name;
+    }
+
+    /**
+     Returns whether events of this type take seats from the theater.
+     @return true for bookings, including bookings made from the waiting list
+     */
+    public boolean isBooking() {
+        return this == BOOKED || this == PROMOTED;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,79 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.Booking;
+import gr.uniwa.marou.model.BookingTable;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The GuestManifestView keeps the current bookings of every guest, in the order they were made.
+ Bookings add a row for the guest, and cancellations take seats from the guest's bookings of the same seat category,
+ latest first, removing each once no seats are left, so a guest can cancel seats of several bookings at once.
+ Every booking keeps the amount the guest paid for it, so that a cancellation refunds the price the seats were
+ booked at, even if the prices have changed since.
+ */
+public class GuestManifestView implements LedgerView {
+
+    private final SeatCategories categories;
+    private BookingTable bookings;
+
+    /**
+     Constructs a new, empty GuestManifestView.
+     @param categories the seat categories of the theater
+     */
+    public GuestManifestView(SeatCategories categories) {
+        this.categories = categories;
+        this.bookings = new BookingTable(categories);
+    }
+
+    @Override
+    public synchronized void apply(BookingEvent event) {
+        if (event.type().isBooking()) {
+            bookings.add(event.guestId(), event.category(), event.numberOfSeats(), event.amountCents());
+        } else if (event.type() == EventType.CANCELLED) {
+            bookings.take(event.guestId(), event.category(), event.numberOfSeats());
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        bookings = new BookingTable(categories);
+    }
+
+    /**
+     Returns the number of seats of the given seat category that the guest has booked, over all their bookings.
+     @param guestId the id of the guest
+     @param category the seat category of the bookings
+     @return the number of booked seats, or 0 if the guest has no such booking
+     */
+    public synchronized int seatsOf(int guestId, SeatCategory category) {
+        return guestId < 0 || category == null ? 0 : bookings.seatsOf(guestId, category);
+    }
+
+    /**
+     Returns the amount the guest paid for the given number of their seats of the given seat category, taken from
+     their latest bookings first, as a cancellation of those seats would take them.
+     @param guestId the id of the guest
+     @param category the seat category of the bookings
+     @param numberOfSeats the number of seats to refund
+     @return the amount to refund, in cents
+     */
+    public synchronized long refundOf(int guestId, SeatCategory category, int numberOfSeats) {
+        return guestId < 0 || category == null ? 0 : bookings.refundOf(guestId, category, numberOfSeats);
+    }
+
+    /**
+     Returns the current bookings, in the order they were made.
+     @return a snapshot of the bookings
+     */
+    public synchronized List<Booking> bookings() {
+        List<Booking> result = new ArrayList<>(bookings.size());
+        for (int i = 0; i < bookings.size(); i++) {
+            result.add(bookings.get(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.DAO.TheaterStore;
+import gr.uniwa.marou.model.GuestDirectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The LedgerJournal keeps the ledger of a show durable across restarts. Set on a BookingLedger, it appends every
+ booking, cancellation and waiting list action to the ledger of a TheaterStore before the action is recorded, so an
+ action that cannot be stored is never applied to the views; and it reads the stored actions back when the server
+ starts, so that they can be replayed into the new ledger before the service is bound.
+ Capacity changes are not written: the capacity of a theater comes from the configuration it is started with.
+ Each action is stored as one line, "timestamp,type,code,seats,amount,guest", with the guest name URL-encoded.
+ */
+public class LedgerJournal {
+
+    private final TheaterStore store;
+    private final GuestDirectory guestDirectory;
+
+    /**
+     Constructs a new LedgerJournal. Set it on the ledger once the stored actions have been replayed, so that they are
+     not written a second time.
+     @param store the store to write the actions to
+     @param guestDirectory the directory that assigned the guest ids of the events
+     */
+    public LedgerJournal(TheaterStore store, GuestDirectory guestDirectory) {
+        this.store = store;
+        this.guestDirectory = guestDirectory;
+    }
+
+    /**
+     Writes events that are about to be recorded to the store, in one write.
+     @param events the events to write
+     @throws UncheckedIOException if the store cannot be written, in which case the events must not be recorded
+     */
+    public void write(List<BookingEvent> events) {
+        List<String> records = new ArrayList<>(events.size());
+        for (BookingEvent event : events) {
+            if (event.type() == EventType.CAPACITY_CHANGED) {
+                continue;
+            }
+            String guestName = URLEncoder.encode(guestDirectory.nameOf(event.guestId()), StandardCharsets.UTF_8);
+            records.add(event.timestamp() + "," + event.type().name() + "," + event.category().code() + ","
+                    + event.numberOfSeats() + "," + event.amount().toPlainString() + "," + guestName);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            store.appendLedger(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store the ledger events " + events, e);
+        }
+    }
+
+    /**
+     Reads the actions stored in the ledger of a store, in the order they were recorded. Malformed records are skipped.
+     @param store the store to read
+     @return the stored actions
+     @throws IOException if the store cannot be read
+     */
+    public static List<Entry> load(TheaterStore store) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (String record : store.loadLedger()) {
+            String[] fields = record.split(",", 6);
+            try {
+                if (fields.length != 6 || fields[5].isEmpty()) {
+                    throw new IllegalArgumentException("expected timestamp,type,code,seats,amount,guest");
+                }
+                entries.add(new Entry(Long.parseLong(fields[0]), EventType.valueOf(fields[1]), fields[2],
+                        Integer.parseInt(fields[3]), new BigDecimal(fields[4]),
+                        URLDecoder.decode(fields[5], StandardCharsets.UTF_8)));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Skipping malformed ledger record: " + record);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     An action read back from the store.
+     @param timestamp the time the action was recorded, in milliseconds since the epoch
+     @param type the kind of action
+     @param categoryCode the code of the seat category the action concerns
+     @param numberOfSeats the number of seats the action concerns
+     @param amount the price of the seats at the time of the action
+     @param guestName the name of the guest
+     */
+    public record Entry(long timestamp, EventType type, String categoryCode, int numberOfSeats, BigDecimal amount,
+                        String guestName) {
+    }
+}
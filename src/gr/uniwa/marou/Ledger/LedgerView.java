@@ -0,0 +1,13 @@
+package gr.uniwa.marou.Ledger;
+
+/**
+ The LedgerView interface is implemented by read models that are derived from the booking ledger.
+ A view is updated incrementally as events are appended, and can be rebuilt at any time by resetting it and
+ replaying the ledger, so new views can be added without changing the write path.
+ */
+public interface LedgerView {
+
+    void apply(BookingEvent event);
+
+    void reset();
+}
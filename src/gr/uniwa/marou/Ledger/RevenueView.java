@@ -0,0 +1,55 @@
+package gr.uniwa.marou.Ledger;
+
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The RevenueView keeps the revenue of each seat category: the price of every booking, less the refunds of cancellations.
+ The revenue is counted in cents, so that recording an event does not create a BigDecimal.
+ */
+public class RevenueView implements LedgerView {
+
+    private final SeatCategories categories;
+    private final long[] revenueCents;
+
+    /**
+     Constructs a new RevenueView.
+     @param categories the seat categories of the theater
+     */
+    public RevenueView(SeatCategories categories) {
+        this.categories = categories;
+        this.revenueCents = new long[categories.size()];
+    }
+
+    @Override
+    public synchronized void apply(BookingEvent event) {
+        int zone = event.category().id();
+        if (event.type().isBooking()) {
+            revenueCents[zone] += event.amountCents();
+        } else if (event.type() == EventType.CANCELLED) {
+            revenueCents[zone] -= event.amountCents();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(revenueCents, 0);
+    }
+
+    /**
+     Returns the revenue of each seat category.
+     @return a map that maps each seat category to its revenue
+     */
+    public synchronized Map<SeatCategory, BigDecimal> getRevenue() {
+        Map<SeatCategory, BigDecimal> result = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            result.put(category, BigDecimal.valueOf(revenueCents[category.id()], 2));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,175 @@
+package gr.uniwa.marou.Server;
+
+import gr.uniwa.marou.DAO.TheaterDAO;
+import gr.uniwa.marou.Ledger.BookingLedger;
+import gr.uniwa.marou.Ledger.EventType;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.TheaterConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The TheaterConfigWatcher applies changes of an external theater configuration file while the server is running.
+ The directory of the file is watched with a WatchService, and whenever the file changes it is parsed and applied:
+ the capacity of each seat category changes by the difference between the new and the old capacity, and then all
+ the prices are swapped in at once.
+ A capacity cannot drop below the seats already booked, even in a seat category that may be overbooked; such a
+ configuration is rejected as a whole and the previous one stays in force. Adding, removing, renaming or reordering seat categories changes the ids that the
+ bookings refer to, so such a configuration is rejected as well and only takes effect when the server restarts.
+ The changes are applied through the per-category locks of the DAO, so bookings
+ are never paused, and every capacity change is recorded in the booking ledger.
+ */
+public class TheaterConfigWatcher implements Closeable {
+
+    private final Path file;
+    private final TheaterDAO theaterDAO;
+    private final BookingLedger ledger;
+    private final WatchService watchService;
+    private TheaterConfig current;
+
+    /**
+     Constructs a new TheaterConfigWatcher.
+     @param file the configuration file to watch
+     @param theaterDAO the DAO to apply the changes to
+     @param ledger the ledger to record capacity changes in
+     @param current the configuration the theater is currently running with
+     @throws IOException if the directory of the file cannot be watched
+     */
+    public TheaterConfigWatcher(Path file, TheaterDAO theaterDAO, BookingLedger ledger, TheaterConfig current) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.theaterDAO = theaterDAO;
+        this.ledger = ledger;
+        this.current = current;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     Starts watching the configuration file on a daemon thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this::watch, "theater-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     Reads the configuration file and applies it. Errors are reported and leave the current configuration in force.
+     An empty file is skipped quietly, since editors often truncate a file before writing its new content.
+     @return true if the configuration was applied, false otherwise
+     */
+    public boolean reload() {
+        try {
+            if (Files.size(file) == 0) {
+                return false;
+            }
+            return apply(TheaterConfig.load(file));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring invalid theater configuration " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     Applies a new configuration. The DAO checks every capacity reduction against the seats booked, under the lock of
+     the seat category; if one of them would leave fewer seats than are booked, the changes made so far are undone
+     and nothing else is changed. Capacities are reduced before any are increased, so when a reduction is rejected, undoing
+     the changes made so far only gives seats back and is not checked against the bookings.
+     @param next the configuration to apply
+     @return true if the configuration was applied, false if it was rejected
+     */
+    public synchronized boolean apply(TheaterConfig next) {
+        if (!next.categories().equals(current.categories())) {
+            System.out.println("Rejecting theater configuration: the seat categories changed from "
+                    + current.categories() + " to " + next.categories() + "; restart the server to apply them.");
+            return false;
+        }
+        Map<SeatCategory, Integer> deltas = new LinkedHashMap<>();
+        for (SeatCategory category : next.categories().all()) {
+            int delta = next.capacity().get(category) - current.capacity().get(category);
+            if (delta != 0) {
+                deltas.put(category, delta);
+            }
+        }
+        List<SeatCategory> changed = new ArrayList<>();
+        try {
+            for (boolean reductions : new boolean[]{true, false}) {
+                for (Map.Entry<SeatCategory, Integer> entry : deltas.entrySet()) {
+                    if (entry.getValue() < 0 == reductions) {
+                        changeCapacity(entry.getKey(), entry.getValue());
+                        changed.add(entry.getKey());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            for (SeatCategory category : changed) {
+                try {
+                    changeCapacity(category, -deltas.get(category));
+                } catch (RuntimeException undoFailure) {
+                    System.out.println("Could not restore the capacity of " + category + ": " + undoFailure.getMessage());
+                }
+            }
+            System.out.println("Rejecting theater configuration: " + e.getMessage());
+            return false;
+        }
+        theaterDAO.updatePrices(next.prices());
+        current = next;
+        System.out.println("Applied theater configuration from " + file + ": capacity changes " + deltas + ".");
+        return true;
+    }
+
+    /**
+     Returns the configuration the theater is currently running with.
+     @return the current configuration
+     */
+    public synchronized TheaterConfig getCurrent() {
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void changeCapacity(SeatCategory category, int delta) {
+        theaterDAO.updateAvailability(category, Math.abs(delta), delta > 0);
+        ledger.append(EventType.CAPACITY_CHANGED, null, category, delta, BigDecimal.ZERO);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path path && file.getFileName().equals(path)) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+}
@@ -1,21 +1,64 @@
 package gr.uniwa.marou.Server;
 
+import gr.uniwa.marou.Analytics.OverbookingPolicy;
+import gr.uniwa.marou.Cluster.ClusterNode;
+import gr.uniwa.marou.DAO.FileTheaterStore;
+import gr.uniwa.marou.DAO.StoreTheaterDAO;
+import gr.uniwa.marou.DAO.TheaterDAO;
 import gr.uniwa.marou.DAO.TheaterDAOImpl;
-import gr.uniwa.marou.Service.TheaterRMIService;
+import gr.uniwa.marou.DAO.TheaterStore;
+import gr.uniwa.marou.DAO.WriteBehindTheaterDAO;
+import gr.uniwa.marou.Ledger.LedgerJournal;
+import gr.uniwa.marou.Service.AdmissionQueue;
+import gr.uniwa.marou.Service.RateLimiter;
 import gr.uniwa.marou.Service.TheaterServiceImpl;
+import gr.uniwa.marou.model.SeatCategory;
 import gr.uniwa.marou.model.Theater;
+import gr.uniwa.marou.model.TheaterConfig;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.Map;
 
 /**
  The TheaterServer class is responsible for creating an RMI server that provides access to the TheaterService.
  The server is created by binding the remote TheaterService object to a URL using the Naming class, and registering it
  with the RMI registry on the specified port.
+ The admission queue in front of the booking path can be tuned with the system properties
+ theater.admission.rate (requests admitted per second for each seat category) and theater.admission.capacity
+ (requests that may wait per seat category before new ones are rejected). The per-guest and per-host rate limits are
+ set with theater.ratelimit.guest and theater.ratelimit.host (requests per second, with bursts of twice that).
+ The DAO backend is selected with theater.dao: "memory" (the default) keeps the theater in memory only, so every
+ start begins with an empty theater, while "file" keeps the ledger of bookings, cancellations and waiting list
+ actions, and the availability they leave, durable in an embedded file store in the directory given by
+ theater.store.dir. With the file backend, availability changes are written behind a cache: they are flushed at least
+ every theater.writebehind.interval milliseconds, or as soon as theater.writebehind.batch changes are pending.
+ If theater.config names a CSV file, the theater is configured from it instead of the bundled theater_seats.csv,
+ and changes to the file are applied to prices and capacity while the server is running. Either file may define
+ seat categories beyond the classic seat types; changes to the set of categories take effect on restart.
+ The server starts warm: the stored ledger is replayed and checked against the stored availability, and the booking
+ path is exercised theater.warmup.iterations times (0 to skip) before the service is bound, so the first guests do not
+ pay for class loading and JIT compilation.
+ On shutdown the service is unbound, new requests are turned away, the calls in progress are given up to
+ theater.shutdown.timeout milliseconds to finish, and the state is flushed to the store before the JVM exits.
+ Seat categories listed in theater.overbook (code:ratio pairs) may be overbooked by the share of their seats that
+ guests have been cancelling, up to the listed ratio.
+ The registry listens on the port given by theater.port. If theater.cluster.shows lists several shows, separated by
+ commas, the server runs as a node of a theater cluster instead, where consistent hashing spreads the shows over the
+ nodes; theater.cluster.seed names the nodes (host:port) through which a new node joins the cluster.
  */
 public class TheaterServer {
+
+    public static final int DEFAULT_PORT = 9999;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
     /**
      * The main method is the entry point of the application.
      * It creates an instance of the TheaterService implementation (TheaterServiceImpl), which in turn
@@ -25,9 +68,46 @@ public class TheaterServer {
      */
     public static void main(String[] args){
         try {
-            LocateRegistry.createRegistry(9999);
-            TheaterRMIService lServer = new TheaterServiceImpl(new TheaterDAOImpl(new Theater()));
-            String url = "rmi://" + InetAddress.getLocalHost().getHostAddress() + ":9999/TheaterService";
+            int port = Integer.getInteger("theater.port", DEFAULT_PORT);
+            Registry registry = LocateRegistry.createRegistry(port);
+            int guestRate = Integer.getInteger("theater.ratelimit.guest", TheaterServiceImpl.DEFAULT_GUEST_RATE);
+            int hostRate = Integer.getInteger("theater.ratelimit.host", TheaterServiceImpl.DEFAULT_HOST_RATE);
+            String configFile = System.getProperty("theater.config");
+            TheaterConfig config = configFile == null ? TheaterConfig.loadDefault() : TheaterConfig.load(Path.of(configFile));
+            String clusterShows = System.getProperty("theater.cluster.shows");
+            if (clusterShows != null) {
+                startClusterNode(registry, port, List.of(clusterShows.split(",")), config, guestRate, hostRate);
+                return;
+            }
+            TheaterStore store = createStore();
+            // Read before the DAO writes the configured availability over it
+            Map<String, Integer> storedAvailability = store == null ? null : store.load();
+            TheaterDAO theaterDAO = createDAO(new Theater(config), store);
+            AdmissionQueue admissionQueue = new AdmissionQueue(theaterDAO.getCategories(),
+                    Integer.getInteger("theater.admission.rate", TheaterServiceImpl.DEFAULT_ADMISSION_RATE),
+                    Integer.getInteger("theater.admission.capacity", TheaterServiceImpl.DEFAULT_ADMISSION_CAPACITY));
+            TheaterServiceImpl lServer = new TheaterServiceImpl(theaterDAO, admissionQueue,
+                    new RateLimiter(guestRate, 2 * guestRate), new RateLimiter(hostRate, 2 * hostRate));
+            enableOverbooking(lServer, theaterDAO, config);
+            // Replay the stored ledger before anything else, so a restart picks up where the last run stopped
+            if (store != null) {
+                restoreLedger(lServer, store, storedAvailability);
+            } else {
+                System.out.println("The memory backend keeps no state across restarts; the theater starts empty.");
+            }
+            TheaterConfigWatcher watcher = null;
+            if (configFile != null) {
+                watcher = new TheaterConfigWatcher(Path.of(configFile), theaterDAO, lServer.getLedger(), config);
+                watcher.start();
+            }
+            int warmupIterations = Integer.getInteger("theater.warmup.iterations", TheaterWarmup.DEFAULT_ITERATIONS);
+            if (warmupIterations > 0) {
+                System.out.println("Warmed up the booking path in " + TheaterWarmup.run(config, warmupIterations) + " ms.");
+            }
+            String url = "rmi://" + InetAddress.getLocalHost().getHostAddress() + ":" + port + "/TheaterService";
+            TheaterConfigWatcher configWatcher = watcher;
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                    () -> shutdown(url, lServer, configWatcher, theaterDAO), "theater-shutdown"));
             Naming.rebind(url, lServer);  //create rmi server
             System.out.println("Theater gr.uniwa.marou.Server is ready for operations.");
         } catch (RemoteException e) {
@@ -36,4 +116,177 @@ public class TheaterServer {
             System.out.println("Unexpected exception: " + e);
         }
     }
+
+    /**
+     * Starts this server as a node of a theater cluster. Every show gets its own in-memory theater, configured like
+     * the single theater of a standalone server, with its own admission queue and rate limits. The node starts a new
+     * cluster, or joins the cluster of the nodes named in theater.cluster.seed and takes over the shows it owns.
+     * On shutdown the shows of the node are drained; their state is not handed to the other nodes.
+     * @param registry the registry of this node
+     * @param port the port of the registry
+     * @param shows the names of all the shows of the cluster
+     * @param config the configuration of every theater
+     * @param guestRate the per-guest rate limit
+     * @param hostRate the per-host rate limit
+     * @throws Exception if the node cannot be started or cannot join the cluster
+     */
+    private static void startClusterNode(Registry registry, int port, List<String> shows, TheaterConfig config,
+                                         int guestRate, int hostRate) throws Exception {
+        ClusterNode.ShowFactory factory = show -> {
+            TheaterDAO theaterDAO = new TheaterDAOImpl(new Theater(show, config.categories(), config.prices(), config.capacity()));
+            TheaterServiceImpl service = new TheaterServiceImpl(theaterDAO,
+                    new AdmissionQueue(config.categories(),
+                            Integer.getInteger("theater.admission.rate", TheaterServiceImpl.DEFAULT_ADMISSION_RATE),
+                            Integer.getInteger("theater.admission.capacity", TheaterServiceImpl.DEFAULT_ADMISSION_CAPACITY)),
+                    new RateLimiter(guestRate, 2 * guestRate), new RateLimiter(hostRate, 2 * hostRate));
+            enableOverbooking(service, theaterDAO, config);
+            return service;
+        };
+        long shutdownTimeout = Long.getLong("theater.shutdown.timeout", DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+        int warmupIterations = Integer.getInteger("theater.warmup.iterations", TheaterWarmup.DEFAULT_ITERATIONS);
+        if (warmupIterations > 0) {
+            System.out.println("Warmed up the booking path in " + TheaterWarmup.run(config, warmupIterations) + " ms.");
+        }
+        String self = InetAddress.getLocalHost().getHostAddress() + ":" + port;
+        ClusterNode node = new ClusterNode(self, registry, shows, factory, shutdownTimeout);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Theater cluster node is shutting down.");
+            node.shutdown(shutdownTimeout);
+            System.out.println("Theater cluster node stopped.");
+        }, "theater-shutdown"));
+        String seeds = System.getProperty("theater.cluster.seed");
+        if (seeds == null) {
+            node.bootstrap();
+        } else {
+            RemoteException failure = null;
+            for (String seed : seeds.split(",")) {
+                try {
+                    node.joinVia(seed);
+                    failure = null;
+                    break;
+                } catch (RemoteException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        System.out.println("Theater cluster node " + self + " is ready for operations, hosting " + node.hostedShows() + ".");
+    }
+
+    /**
+     * Shuts the server down gracefully. The service is unbound so that no new clients find it, and drained so that
+     * requests from clients that already hold a reference are turned away with a hint to retry. The calls in progress,
+     * including requests waiting in the admission queue, are then given up to theater.shutdown.timeout milliseconds
+     * to finish before the service is unexported. Finally the config watcher is stopped and the DAO is closed, which
+     * flushes any changes still pending in the write-behind cache to the store.
+     * @param url the URL the service is bound to
+     * @param service the service to drain
+     * @param watcher the config watcher, or null if the configuration is not watched
+     * @param theaterDAO the DAO holding the state of the theater
+     */
+    private static void shutdown(String url, TheaterServiceImpl service, TheaterConfigWatcher watcher, TheaterDAO theaterDAO) {
+        System.out.println("Theater server is shutting down.");
+        try {
+            Naming.unbind(url);
+        } catch (Exception e) {
+            System.out.println("Could not unbind " + url + ": " + e);
+        }
+        if (!service.shutdown(Long.getLong("theater.shutdown.timeout", DEFAULT_SHUTDOWN_TIMEOUT_MILLIS))) {
+            System.out.println("Calls still in progress after the shutdown timeout; stopped the service anyway.");
+        }
+        try {
+            if (watcher != null) {
+                watcher.close();
+            }
+            if (theaterDAO instanceof Closeable closeable) {
+                closeable.close();
+            }
+            System.out.println("Theater server stopped.");
+        } catch (IOException e) {
+            System.out.println("Could not close the theater store: " + e);
+        }
+    }
+
+    /**
+     * Registers an OverbookingPolicy on the ledger of the service if theater.overbook lists the largest overbook
+     * ratio of one or more seat categories, e.g. "SA:0.10,CE:0.05". The allowance of each listed category follows its
+     * cancellation rate, up to the listed share of its capacity.
+     * @param service the service of the theater
+     * @param theaterDAO the DAO that enforces the allowances
+     * @param config the configuration with the capacity of every seat category
+     * @throws IllegalArgumentException if the ratios are invalid
+     */
+    private static void enableOverbooking(TheaterServiceImpl service, TheaterDAO theaterDAO, TheaterConfig config) {
+        String ratios = System.getProperty("theater.overbook");
+        if (ratios != null && !ratios.isBlank()) {
+            service.getLedger().register(new OverbookingPolicy(theaterDAO, service.getSalesAnalytics(),
+                    config.capacity(), OverbookingPolicy.parseRatios(theaterDAO.getCategories(), ratios)));
+        }
+    }
+
+    /**
+     * Replays the ledger kept in the store into the service, so that the bookings, waiting lists and sales of the last
+     * run are back before the service is bound, and sets a LedgerJournal that stores every action from now on.
+     * The availability the last run stored is then checked against the availability the replayed ledger leaves.
+     * They differ if the last run died before its latest changes were written behind, if the capacity in the
+     * configuration changed, or if ledger records were lost; the ledger is kept either way, and the store catches up
+     * with it on the next flush.
+     * @param service the service of the theater, which has not served any request yet
+     * @param store the store holding the ledger
+     * @param storedAvailability the availability the last run stored, keyed by the code of the seat category
+     * @throws IOException if the ledger cannot be read
+     * @throws IllegalStateException if the stored bookings do not fit the configured theater
+     */
+    private static void restoreLedger(TheaterServiceImpl service, TheaterStore store,
+                                      Map<String, Integer> storedAvailability) throws IOException {
+        List<LedgerJournal.Entry> entries = LedgerJournal.load(store);
+        service.replay(entries);
+        service.getLedger().setJournal(new LedgerJournal(store, service.getLedger().getGuestDirectory()));
+        System.out.println("Restored " + entries.size() + " ledger events from the store.");
+        int mismatches = 0;
+        for (Map.Entry<SeatCategory, Integer> entry : service.getAvailability().entrySet()) {
+            Integer stored = storedAvailability.get(entry.getKey().code());
+            if (stored != null && !stored.equals(entry.getValue())) {
+                System.out.println("The store holds " + stored + " available " + entry.getKey() + " seats, but its ledger leaves "
+                        + entry.getValue() + "; keeping the ledger.");
+                mismatches++;
+            }
+        }
+        if (mismatches == 0 && !storedAvailability.isEmpty()) {
+            System.out.println("The stored availability agrees with the ledger.");
+        }
+    }
+
+    /**
+     * Opens the store of the backend selected by the theater.dao system property.
+     * @return the embedded file store, or null for the in-memory backend, which keeps nothing
+     * @throws IOException if the file store cannot be opened
+     * @throws IllegalArgumentException if the backend is unknown
+     */
+    private static TheaterStore createStore() throws IOException {
+        String backend = System.getProperty("theater.dao", "memory");
+        return switch (backend) {
+            case "memory" -> null;
+            case "file" -> new FileTheaterStore(Path.of(System.getProperty("theater.store.dir", "theater-data")));
+            default -> throw new IllegalArgumentException("Unknown theater.dao backend: " + backend);
+        };
+    }
+
+    /**
+     * Creates the TheaterDAO backend for the given store.
+     * @param theater the theater to access
+     * @param store the store to keep the theater in, or null to keep it in memory only
+     * @return the in-memory DAO, or a write-behind cache in front of a DAO backed by the store
+     * @throws IOException if the store cannot be written
+     */
+    private static TheaterDAO createDAO(Theater theater, TheaterStore store) throws IOException {
+        if (store == null) {
+            return new TheaterDAOImpl(theater);
+        }
+        return new WriteBehindTheaterDAO(new StoreTheaterDAO(theater, store),
+                Integer.getInteger("theater.writebehind.batch", 1000),
+                Long.getLong("theater.writebehind.interval", 100L));
+    }
 }
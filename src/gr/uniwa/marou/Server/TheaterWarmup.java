@@ -0,0 +1,78 @@
+package gr.uniwa.marou.Server;
+
+import gr.uniwa.marou.DAO.TheaterDAOImpl;
+import gr.uniwa.marou.Service.AdmissionQueue;
+import gr.uniwa.marou.Service.RateLimiter;
+import gr.uniwa.marou.Service.TheaterServiceImpl;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.Theater;
+import gr.uniwa.marou.model.TheaterConfig;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The TheaterWarmup exercises the hot booking and listing code before the service is bound, so that the classes are
+ loaded and the JIT compiler has optimized the booking path by the time the first guest arrives.
+ The warm-up runs against a scratch theater with the same seat categories and prices as the real one, through a
+ throwaway service whose admission queue and rate limits never throttle, so the real state is never touched.
+ Every seat that is booked during the warm-up is cancelled again.
+ */
+public class TheaterWarmup {
+
+    public static final int DEFAULT_ITERATIONS = 20_000;
+
+    private static final int GUESTS = 64;
+    private static final int SCRATCH_SEATS = 1_000;
+
+    private TheaterWarmup() {
+    }
+
+    /**
+     Runs the warm-up.
+     @param config the configuration of the real theater
+     @param iterations the number of rounds of bookings, cancellations and listings to run
+     @return the time the warm-up took, in milliseconds
+     @throws RemoteException if the scratch service fails
+     */
+    public static long run(TheaterConfig config, int iterations) throws RemoteException {
+        long start = System.nanoTime();
+        SeatCategories categories = config.categories();
+        Map<SeatCategory, Integer> seats = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            seats.put(category, SCRATCH_SEATS);
+        }
+        Theater scratch = new Theater("Warmup", categories, config.prices(), seats);
+        TheaterServiceImpl service = new TheaterServiceImpl(new TheaterDAOImpl(scratch),
+                new AdmissionQueue(categories, Integer.MAX_VALUE, Integer.MAX_VALUE),
+                new RateLimiter(Integer.MAX_VALUE, 16_000), new RateLimiter(Integer.MAX_VALUE, 16_000));
+        try {
+            for (int i = 0; i < iterations; i++) {
+                String guestName = "warmup-" + i % GUESTS;
+                SeatCategory category = categories.byId(i % categories.size());
+                SeatCategory other = categories.byId((i + 1) % categories.size());
+                service.calculatePrice(category, 2);
+                service.book(category, 2, guestName);
+                service.cancel(category, 2, guestName);
+                Map<SeatCategory, Integer> group = new LinkedHashMap<>();
+                group.put(category, 1);
+                group.merge(other, 1, Integer::sum);
+                service.bookGroup(group, guestName);
+                for (Map.Entry<SeatCategory, Integer> entry : group.entrySet()) {
+                    service.cancel(entry.getKey(), entry.getValue(), guestName);
+                }
+                service.getAvailability();
+                if (i % 16 == 0) {
+                    service.list();
+                    service.salesReport();
+                }
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,165 @@
+package gr.uniwa.marou.Service;
+
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ The AdmissionQueue is a virtual waiting room placed in front of the booking path.
+ Every request for a seat category receives a ticket and is admitted in ticket order at a configured rate in each
+ seat category, so during an on-sale rush only a steady stream of requests competes for the booking lock.
+ When the queue of a seat category is full, new requests are rejected immediately with a RetryLaterException
+ that tells the client how long to wait before trying again.
+ */
+public class AdmissionQueue {
+
+    private final int capacity;
+    private final SeatCategories categories;
+    private final Lane[] lanes;
+
+    /**
+     Constructs a new AdmissionQueue that admits the given number of requests per second for every seat category.
+     @param categories the seat categories to keep a queue for
+     @param permitsPerSecond the number of requests admitted per second for each seat category
+     @param capacity the maximum number of requests that may wait in the queue of a seat category
+     @throws IllegalArgumentException if the rate or the capacity is not positive
+     */
+    public AdmissionQueue(SeatCategories categories, int permitsPerSecond, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.categories = categories;
+        this.lanes = new Lane[categories.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(intervalOf(permitsPerSecond));
+        }
+    }
+
+    /**
+     Enters the queue of the specified seat category and blocks until the request is admitted.
+     @param category the seat category the guest wants to book
+     @param guestName the name of the guest, used to answer queue position queries
+     @return the ticket that was admitted
+     @throws RetryLaterException if the queue of the seat category is full
+     @throws RemoteException if the thread was interrupted while waiting in the queue
+     */
+    public long enter(SeatCategory category, String guestName) throws RemoteException {
+        return lane(category).enter(category, guestName);
+    }
+
+    /**
+     Returns the number of requests ahead of the given guest in the queue of the specified seat category.
+     @param category the seat category of the queue
+     @param guestName the name of the guest
+     @return the number of requests ahead of the guest, 0 if the guest is next, or -1 if the guest is not queued
+     */
+    public long position(SeatCategory category, String guestName) {
+        return lane(category).position(guestName);
+    }
+
+    private Lane lane(SeatCategory category) {
+        if (!categories.contains(category)) {
+            throw new IllegalArgumentException("Invalid seatType: " + category);
+        }
+        return lanes[category.id()];
+    }
+
+    private static long intervalOf(int permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        return TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    /**
+     The queue of a single seat category. Tickets are handed out in arrival order and only the ticket at the head of
+     the lane may be admitted, no sooner than one interval after the previous admission.
+     */
+    private final class Lane {
+
+        private final Map<String, Long> waitingGuests = new HashMap<>();
+        private final Set<Long> abandonedTickets = new HashSet<>();
+        private final long intervalNanos;
+        private long nextTicket;
+        private long servingTicket;
+        private long nextAdmissionNanos = System.nanoTime();
+
+        Lane(long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+        }
+
+        synchronized long enter(SeatCategory category, String guestName) throws RemoteException {
+            long queued = length();
+            if (queued >= capacity) {
+                throw new RetryLaterException("The booking queue for " + category + " seats is full.",
+                        TimeUnit.NANOSECONDS.toMillis(queued * intervalNanos));
+            }
+            long ticket = nextTicket++;
+            if (ticket == servingTicket && nextAdmissionNanos - System.nanoTime() <= 0) {
+                // Admitted at once, so the guest never has a position to report
+                nextAdmissionNanos = Math.max(nextAdmissionNanos, System.nanoTime()) + intervalNanos;
+                leave(ticket, null);
+                return ticket;
+            }
+            if (guestName != null) {
+                waitingGuests.putIfAbsent(guestName, ticket);
+            }
+            try {
+                while (true) {
+                    if (ticket == servingTicket) {
+                        long delay = nextAdmissionNanos - System.nanoTime();
+                        if (delay <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, delay);
+                    } else {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                leave(ticket, guestName);
+                throw new RemoteException("Interrupted while waiting in the booking queue for " + category + " seats.");
+            }
+            nextAdmissionNanos = Math.max(nextAdmissionNanos, System.nanoTime()) + intervalNanos;
+            leave(ticket, guestName);
+            return ticket;
+        }
+
+        synchronized long position(String guestName) {
+            Long ticket = waitingGuests.get(guestName);
+            return ticket == null ? -1 : ticket - servingTicket;
+        }
+
+        private long length() {
+            return nextTicket - servingTicket - abandonedTickets.size();
+        }
+
+        /**
+         Removes the ticket from the lane. The head of the lane moves past it, and past every ticket behind it
+         whose holder gave up waiting, and the waiting threads are woken up to check whether it is their turn.
+         */
+        private void leave(long ticket, String guestName) {
+            if (guestName != null) {
+                waitingGuests.remove(guestName, ticket);
+            }
+            if (ticket != servingTicket) {
+                abandonedTickets.add(ticket);
+                return;
+            }
+            servingTicket++;
+            // Checked first, so that an admission without abandoned tickets does not box the ticket
+            while (!abandonedTickets.isEmpty() && abandonedTickets.remove(servingTicket)) {
+                servingTicket++;
+            }
+            notifyAll();
+        }
+    }
+}
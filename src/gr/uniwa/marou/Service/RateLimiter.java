@@ -0,0 +1,107 @@
+package gr.uniwa.marou.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ The RateLimiter is a lock-free token bucket limiter keyed by an arbitrary string, such as a guest name or the host
+ of the calling client.
+ Each key owns a single AtomicLong that packs the time of its last refill and its remaining tokens, so a request
+ costs one map lookup and one compare-and-set. Keys that have been idle long enough for their bucket to refill
+ completely are evicted automatically while the limiter is used, which keeps the map small even when the keys rotate.
+ */
+public class RateLimiter {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000;
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final long origin = System.currentTimeMillis();
+    private final long capacity;
+    private final long refillPerMilli;
+    private final long idleMillis;
+
+    /**
+     Constructs a new RateLimiter.
+     @param permitsPerSecond the number of requests each key may make per second in the long run
+     @param burst the number of requests each key may make at once after being idle
+     @throws IllegalArgumentException if the rate or the burst is not positive, or if the burst is too large
+     */
+    public RateLimiter(int permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        if (burst * MILLI_TOKENS > TOKEN_MASK) {
+            throw new IllegalArgumentException("burst must not exceed " + TOKEN_MASK / MILLI_TOKENS);
+        }
+        this.capacity = burst * MILLI_TOKENS;
+        this.refillPerMilli = permitsPerSecond;
+        this.idleMillis = capacity / refillPerMilli + 1;
+    }
+
+    /**
+     Tries to take one token from the bucket of the given key.
+     @param key the key to charge the request to
+     @return 0 if the request is allowed, otherwise the number of milliseconds until a token becomes available
+     */
+    public long tryAcquire(String key) {
+        long now = System.currentTimeMillis() - origin;
+        if (requests.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            evictIdle(now);
+        }
+        // Known keys are looked up without building the lambda that creates a bucket
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(pack(now, capacity)));
+        }
+        while (true) {
+            long state = bucket.get();
+            long tokens = refill(state, now);
+            if (tokens < MILLI_TOKENS) {
+                return (MILLI_TOKENS - tokens + refillPerMilli - 1) / refillPerMilli;
+            }
+            if (bucket.compareAndSet(state, pack(Math.max(now, state >>> TOKEN_BITS), tokens - MILLI_TOKENS))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     Returns the number of keys currently tracked by the limiter.
+     @return the number of tracked keys
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     Removes every key whose bucket has been idle long enough to be full again. Forgetting such a key is harmless,
+     since a new bucket for it would start full as well. Only one thread sweeps at a time; the others skip it.
+     */
+    private void evictIdle(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> now - (bucket.get() >>> TOKEN_BITS) > idleMillis);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private long refill(long state, long now) {
+        long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+        long tokens = state & TOKEN_MASK;
+        return elapsed >= idleMillis ? capacity : Math.min(capacity, tokens + elapsed * refillPerMilli);
+    }
+
+    private static long pack(long time, long tokens) {
+        return time << TOKEN_BITS | tokens;
+    }
+}
@@ -0,0 +1,31 @@
+package gr.uniwa.marou.Service;
+
+import java.rmi.RemoteException;
+
+/**
+ The RetryLaterException is thrown to a remote client when the server refuses a request because it is
+ currently overloaded, for example when the admission queue of a seat type is full.
+ It carries a hint of how long the client should wait before trying again.
+ */
+public class RetryLaterException extends RemoteException {
+
+    private final long retryAfterMillis;
+
+    /**
+     Constructs a new RetryLaterException with the given message and retry hint.
+     @param message the detail message
+     @param retryAfterMillis the number of milliseconds the client should wait before retrying
+     */
+    public RetryLaterException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = Math.max(1, retryAfterMillis);
+    }
+
+    /**
+     Returns the number of milliseconds the client should wait before retrying the request.
+     @return the retry hint in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
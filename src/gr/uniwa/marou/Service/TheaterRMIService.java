@@ -1,7 +1,10 @@
 package gr.uniwa.marou.Service;
 
+import gr.uniwa.marou.model.AvailabilityDelta;
 import gr.uniwa.marou.model.Client;
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.ZoneSales;
 
 import java.math.BigDecimal;
 import java.rmi.Remote;
@@ -12,28 +15,41 @@ import java.util.Map;
 
 /**
  The TheaterRMIService interface defines the methods that can be invoked remotely by a client.
- These methods allow a client to book or cancel seats, list the available seats in the theater,
- retrieve the list of guests who have booked seats, get the availability of seats, add clients to the waiting list,
- and calculate the price of seats.
+ These methods allow a client to look up the seat categories of the theater, book or cancel seats, book seats across several seat types at once, list the available seats in the theater,
+ retrieve the list of guests who have booked seats now or at a past moment, get the availability of seats or only its changes since a
+ version the client has seen, add clients to the waiting list,
+ calculate the price of seats, query the position of a guest in the admission queue and get the sales report.
  The methods may throw a RemoteException if a communication error occurs during the remote method invocation.
  */
 public interface TheaterRMIService extends Remote {
 
-    boolean book(SeatType seatType, int seats, String guestName) throws RemoteException;
+    SeatCategories getCategories() throws RemoteException;
 
-    boolean cancel(SeatType seatType, int numberOfSeats, String guestName) throws RemoteException;
+    boolean book(SeatCategory category, int seats, String guestName) throws RemoteException;
+
+    boolean cancel(SeatCategory category, int numberOfSeats, String guestName) throws RemoteException;
+
+    boolean bookGroup(Map<SeatCategory, Integer> seats, String guestName) throws RemoteException;
 
     StringBuilder list() throws RemoteException;
 
     String guests() throws RemoteException;
 
-    Map<SeatType, Integer> getAvailability()  throws RemoteException ;
+    String guestsAt(long timestamp) throws RemoteException;
+
+    Map<SeatCategory, Integer> getAvailability()  throws RemoteException ;
+
+    AvailabilityDelta getAvailabilityChanges(long sinceVersion) throws RemoteException;
+
+    Map<SeatCategory, List<Client>> getWaitingList(SeatCategory category) throws RemoteException;
+
+    void addToWaitingList(SeatCategory category, String guestName, int numberOfSeats) throws RemoteException;
 
-    Map<SeatType, List<Client>> getWaitingList(SeatType seatType) throws RemoteException;
+    BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException;
 
-    void addToWaitingList(SeatType seatType, String guestName, int numberOfSeats) throws RemoteException;
+    String notifyGuestsInWaitingList(int numberOfSeats, SeatCategory category) throws RemoteException;
 
-    BigDecimal calculatePrice(SeatType seatType, int numberOfSeats) throws RemoteException;
+    long queuePosition(SeatCategory category, String guestName) throws RemoteException;
 
-    String notifyGuestsInWaitingList(int numberOfSeats, SeatType seatType) throws RemoteException;
+    Map<SeatCategory, ZoneSales> salesReport() throws RemoteException;
 }
@@ -1,6 +1,7 @@
 package gr.uniwa.marou.Service;
 
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
 
 import java.math.BigDecimal;
 import java.rmi.Remote;
@@ -10,14 +11,17 @@ import java.util.Map;
 
 /**
  The TheaterService interface provides the methods for interacting with the theater's data, which include:
- Getting the price of a specific seat type
- Getting the availability of all seat types
- Updating the availability of a specific seat type
+ Getting the seat categories of the theater
+ Getting the price of a specific seat category
+ Getting the availability of all seat categories
+ Updating the availability of a specific seat category
  */
 public interface TheaterService extends Remote {
-    BigDecimal getPrice(SeatType seatType) throws RemoteException;
+    SeatCategories getCategories() throws RemoteException;
 
-    Map<SeatType, Integer> getAvailability() throws RemoteException;
+    BigDecimal getPrice(SeatCategory category) throws RemoteException;
 
-    void updateAvailability(SeatType seatType, int seats,boolean cancel) throws RemoteException;
+    Map<SeatCategory, Integer> getAvailability() throws RemoteException;
+
+    void updateAvailability(SeatCategory category, int seats,boolean cancel) throws RemoteException;
 }
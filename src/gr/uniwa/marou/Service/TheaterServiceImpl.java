@@ -1,116 +1,561 @@
 package gr.uniwa.marou.Service;
 
+import gr.uniwa.marou.Analytics.SalesAnalytics;
 import gr.uniwa.marou.DAO.TheaterDAO;
+import gr.uniwa.marou.Ledger.AvailabilityFeed;
+import gr.uniwa.marou.Ledger.AvailabilityView;
+import gr.uniwa.marou.Ledger.BookingEvent;
+import gr.uniwa.marou.Ledger.BookingLedger;
+import gr.uniwa.marou.Ledger.EventType;
+import gr.uniwa.marou.Ledger.GuestManifestView;
+import gr.uniwa.marou.Ledger.LedgerJournal;
+import gr.uniwa.marou.Ledger.RevenueView;
+import gr.uniwa.marou.model.AvailabilityDelta;
+import gr.uniwa.marou.model.Booking;
 import gr.uniwa.marou.model.Client;
-import gr.uniwa.marou.model.SeatType;
+import gr.uniwa.marou.model.GuestDirectory;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
 import gr.uniwa.marou.model.Theater;
+import gr.uniwa.marou.model.ZoneSales;
 
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 
 /**
  * Implementation of the TheaterService and TheaterRMIService interfaces.
+ * Every booking, cancellation and waiting list action is recorded in a BookingLedger, and the guest manifest,
+ * availability and revenue of the show are read from views that the ledger keeps up to date.
  */
 public class TheaterServiceImpl extends UnicastRemoteObject  implements TheaterRMIService, TheaterService{
 
+    public static final int DEFAULT_ADMISSION_RATE = 200;
+    public static final int DEFAULT_ADMISSION_CAPACITY = 10_000;
+    public static final int DEFAULT_GUEST_RATE = 5;
+    public static final int DEFAULT_HOST_RATE = 50;
+    public static final long DRAIN_RETRY_MILLIS = 5_000;
+    public static final int AVAILABILITY_FEED_SIZE = 1_024;
+    private static final long DRAIN_POLL_MILLIS = 50;
+
     private final TheaterDAO theaterDAO;
-    private final List<Client> clients;
-    private final Map<SeatType, List<Client>> waitingList;
+    private final GuestDirectory guestDirectory;
+    private final BookingLedger ledger;
+    private final GuestManifestView manifest;
+    private final AvailabilityFeed availabilityFeed;
+    private final RevenueView revenueView;
+    private final SalesAnalytics salesAnalytics;
+    private final Map<SeatCategory, List<Client>> waitingList;
+    private final AdmissionQueue admissionQueue;
+    private final RateLimiter guestLimiter;
+    private final RateLimiter hostLimiter;
+    private volatile boolean draining;
+    private volatile boolean sealed;
 
     public TheaterServiceImpl(TheaterDAO theaterDAO) throws RemoteException {
+        this(theaterDAO, new AdmissionQueue(theaterDAO.getCategories(), DEFAULT_ADMISSION_RATE, DEFAULT_ADMISSION_CAPACITY));
+    }
+
+    public TheaterServiceImpl(TheaterDAO theaterDAO, AdmissionQueue admissionQueue) throws RemoteException {
+        this(theaterDAO, admissionQueue, new RateLimiter(DEFAULT_GUEST_RATE, 2 * DEFAULT_GUEST_RATE),
+                new RateLimiter(DEFAULT_HOST_RATE, 2 * DEFAULT_HOST_RATE));
+    }
+
+    public TheaterServiceImpl(TheaterDAO theaterDAO, AdmissionQueue admissionQueue,
+                              RateLimiter guestLimiter, RateLimiter hostLimiter) throws RemoteException {
         super();
         this.theaterDAO = theaterDAO;
-        this.clients = new ArrayList<>();
+        this.guestDirectory = new GuestDirectory();
+        this.ledger = new BookingLedger(guestDirectory);
+        this.manifest = new GuestManifestView(theaterDAO.getCategories());
+        this.availabilityFeed = new AvailabilityFeed(theaterDAO.getAvailability(), AVAILABILITY_FEED_SIZE);
+        this.revenueView = new RevenueView(theaterDAO.getCategories());
+        this.salesAnalytics = new SalesAnalytics(theaterDAO.getCategories());
+        ledger.register(manifest);
+        ledger.register(availabilityFeed);
+        ledger.register(revenueView);
+        ledger.register(salesAnalytics);
         this.waitingList = new HashMap<>();
+        this.admissionQueue = admissionQueue;
+        this.guestLimiter = guestLimiter;
+        this.hostLimiter = hostLimiter;
+    }
+
+    /**
+     * Stops accepting new bookings, cancellations and waiting list entries, so that the server can shut down once the
+     * calls already in progress have finished. Requests that arrive while draining are turned away with a
+     * RetryLaterException, which tells the client to try again once the server is back.
+     */
+    public void drain() {
+        draining = true;
+    }
+
+    /**
+     * Returns whether the service has stopped accepting new requests.
+     * @return true once drain has been called
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Drains the service and unexports it once the calls in progress, including requests waiting in the admission
+     * queue, have finished. If they do not finish in time, the service is unexported by force.
+     * @param timeoutMillis the maximum time to wait for the calls in progress, in milliseconds
+     * @return true if all the calls finished in time, false if the service had to be unexported by force
+     */
+    public boolean shutdown(long timeoutMillis) {
+        if (awaitCalls(timeoutMillis)) {
+            return true;
+        }
+        unexport();
+        return false;
+    }
+
+    /**
+     * Drains the service and waits for the calls in progress, including requests waiting in the admission queue, to
+     * finish. Unexporting without force fails for as long as calls are still in progress, so it is retried until it
+     * succeeds or the timeout expires; the service stays exported if calls are still in progress.
+     * @param timeoutMillis the maximum time to wait for the calls in progress, in milliseconds
+     * @return true if all the calls finished in time and the service was unexported, false otherwise
+     */
+    public boolean awaitCalls(long timeoutMillis) {
+        drain();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (!UnicastRemoteObject.unexportObject(this, false)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+        } catch (NoSuchObjectException e) {
+            // Already unexported
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unexports the service by force, cutting off the calls still in progress.
+     */
+    public void unexport() {
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // Already unexported
+        }
+    }
+
+    /**
+     * Stops the service from changing any more bookings, so that its state can be taken over elsewhere. Calls still in
+     * progress that have not changed anything yet are turned away with a RetryLaterException when they try to. Once
+     * this returns, every change that was made is visible, and no other will be made.
+     */
+    public void seal() {
+        synchronized (this) {
+            synchronized (waitingList) {
+                sealed = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the current bookings of every guest, in the order they were made, so that the show can be moved to
+     * another server and restored there.
+     * @return a snapshot of the bookings
+     */
+    public List<Client> currentBookings() {
+        List<Client> clients = new ArrayList<>();
+        for (Booking booking : manifest.bookings()) {
+            clients.add(booking.toClient(guestDirectory));
+        }
+        return clients;
+    }
+
+    /**
+     * Returns the number of seats each seat category may currently be overbooked by, so that the show can be moved
+     * to another server and restored there.
+     * @return the overbook allowance of every seat category, ordered by id
+     */
+    public Map<SeatCategory, Integer> overbookAllowances() {
+        Map<SeatCategory, Integer> allowances = new LinkedHashMap<>();
+        for (SeatCategory category : theaterDAO.getCategories().all()) {
+            allowances.put(category, theaterDAO.getOverbookAllowance(category));
+        }
+        return allowances;
     }
 
     /**
-     * Adds a client to the clients list.
+     * Restores bookings and waiting list entries taken from another server with currentBookings and getWaitingList.
+     * The bookings are taken from this theater and recorded in the ledger as new bookings, so the availability,
+     * guest manifest and revenue of this server agree with the server the show was taken from.
+     * The overbook allowances of the other server are applied first, and every seat is taken before any booking is
+     * recorded, so that overbooked seats fit again even though an overbooking policy of this server, which derives
+     * the allowances from the sales it has seen, may lower them as the bookings are recorded.
+     * @param bookings the bookings to restore
+     * @param waitingClients the waiting list entries to restore
+     * @param overbookAllowances the overbook allowances of the seat categories on the other server
+     * @throws RemoteException if the price of a booking cannot be calculated
+     * @throws IllegalStateException if this theater does not have enough seats for the bookings
+     */
+    public synchronized void restore(List<Client> bookings, Map<SeatCategory, List<Client>> waitingClients,
+                                     Map<SeatCategory, Integer> overbookAllowances) throws RemoteException {
+        for (Map.Entry<SeatCategory, Integer> entry : overbookAllowances.entrySet()) {
+            theaterDAO.updateOverbookAllowance(entry.getKey(), entry.getValue());
+        }
+        for (Client client : bookings) {
+            if (!theaterDAO.book(client.getSeatCategory(), client.getNumberOfSeats(), client.getGuestName())) {
+                throw new IllegalStateException("Cannot restore the booking of " + client);
+            }
+        }
+        for (Client client : bookings) {
+            addClient(client);
+        }
+        synchronized (waitingList) {
+            for (Map.Entry<SeatCategory, List<Client>> entry : waitingClients.entrySet()) {
+                for (Client client : entry.getValue()) {
+                    record(EventType.WAITLISTED, client.getGuestName(), entry.getKey(), client.getNumberOfSeats());
+                    waitingList.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(client);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the actions stored by a LedgerJournal into this service, which must not have served any request yet.
+     * Bookings, promotions from the waiting list and cancellations are applied to the theater again, waiting list
+     * entries are put back in order, and every action is recorded in the ledger with its original time and price, so
+     * the guest manifest, availability and sales of the show are those of the run that stored them.
+     * Actions of seat categories that are no longer configured are skipped.
+     * @param entries the stored actions, in the order they were recorded
+     * @throws IllegalStateException if a stored booking or cancellation does not fit the configured theater
+     */
+    public synchronized void replay(List<LedgerJournal.Entry> entries) {
+        for (LedgerJournal.Entry entry : entries) {
+            SeatCategory category;
+            try {
+                category = theaterDAO.getCategories().byCode(entry.categoryCode());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Skipping the stored action of an unknown seat category: " + entry);
+                continue;
+            }
+            boolean applied = switch (entry.type()) {
+                case BOOKED -> theaterDAO.book(category, entry.numberOfSeats(), entry.guestName());
+                case PROMOTED -> removeFromWaitingList(category, entry.guestName(), entry.numberOfSeats())
+                        && theaterDAO.book(category, entry.numberOfSeats(), entry.guestName());
+                case CANCELLED -> theaterDAO.cancel(category, entry.numberOfSeats(), entry.guestName());
+                case WAITLISTED -> {
+                    synchronized (waitingList) {
+                        waitingList.computeIfAbsent(category, k -> new ArrayList<>())
+                                .add(new Client(entry.guestName(), entry.numberOfSeats(), category));
+                    }
+                    yield true;
+                }
+                // Capacity comes from the configuration the server was started with
+                case CAPACITY_CHANGED -> true;
+            };
+            if (!applied) {
+                throw new IllegalStateException("The stored action " + entry + " does not fit the configured theater");
+            }
+            if (entry.type() != EventType.CAPACITY_CHANGED) {
+                ledger.append(entry.type(), entry.guestName(), category, entry.numberOfSeats(), entry.amount(),
+                        entry.timestamp());
+            }
+        }
+    }
+
+    /**
+     * Removes the first waiting list entry of a guest for the given seats.
+     * @return true if the entry was found
+     */
+    private boolean removeFromWaitingList(SeatCategory category, String guestName, int numberOfSeats) {
+        synchronized (waitingList) {
+            List<Client> waitingClients = waitingList.getOrDefault(category, Collections.emptyList());
+            for (int i = 0; i < waitingClients.size(); i++) {
+                Client client = waitingClients.get(i);
+                if (client.getGuestName().equals(guestName) && client.getNumberOfSeats() == numberOfSeats) {
+                    waitingClients.remove(i);
+                    if (waitingClients.isEmpty()) {
+                        waitingList.remove(category);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Turns a change away if the service has been sealed. Callers hold the lock of the service, or of the waiting list
+     * for changes of the waiting list only, which seal takes too.
+     * @throws RetryLaterException if the service has been sealed
+     */
+    private void checkUnsealed() throws RetryLaterException {
+        if (sealed) {
+            throw new RetryLaterException("The show is moving to another server.", DRAIN_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Turns a request away if the service is draining.
+     * @throws RetryLaterException if the service is shutting down
+     */
+    private void checkAccepting() throws RetryLaterException {
+        if (draining) {
+            throw new RetryLaterException("The theater server is restarting.", DRAIN_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Charges a request to the rate limits of the calling host and of the guest.
+     * This is checked before any lock is taken, so that a flood of requests is turned away without
+     * slowing down the bookings of other guests.
+     * @param guestName the name of the guest the request is made for
+     * @throws RetryLaterException if the host or the guest has exceeded its rate limit, or the service is draining
+     */
+    private void checkRateLimit(String guestName) throws RetryLaterException {
+        checkAccepting();
+        String host = callerHost();
+        long retryAfter = hostLimiter.tryAcquire(host);
+        if (retryAfter > 0) {
+            throw new RetryLaterException("Too many requests from " + host + ".", retryAfter);
+        }
+        retryAfter = guestLimiter.tryAcquire(guestName == null ? "" : guestName);
+        if (retryAfter > 0) {
+            throw new RetryLaterException("Too many requests for guest " + guestName + ".", retryAfter);
+        }
+    }
+
+    /**
+     * Returns the host of the remote client whose call is being served. In-process calls, which are not served by
+     * RMI, are charged to the host "local".
+     * @return the host of the caller
+     */
+    protected String callerHost() {
+        try {
+            return getClientHost();
+        } catch (ServerNotActiveException e) {
+            return "local";
+        }
+    }
+
+    /**
+     * Records the booking of a client in the ledger, which adds it to the guest manifest.
      * @param client the client to add
+     * @throws RemoteException if the price of the booking cannot be calculated
+     */
+    public void addClient(Client client) throws RemoteException {
+        record(EventType.BOOKED, client.getGuestName(), client.getSeatCategory(), client.getNumberOfSeats());
+    }
+
+    /**
+     * Returns the ledger of the show, so that further views can be registered on it.
+     * @return the booking ledger
+     */
+    public BookingLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Returns the view of the ledger that derives the availability of each seat category from the recorded events.
+     * @return the availability view
      */
-    public synchronized void addClient(Client client) {
-        // Guest name doesn't exist in the list, add a new client
-        clients.add(client);
+    public AvailabilityView getAvailabilityView() {
+        return availabilityFeed;
     }
 
     /**
-     * Removes a client from the clients list.
-     * @param guestName the name of the guest to remove
+     * Returns the view of the ledger that keeps the sales figures of each seat category.
+     * @return the sales analytics view
      */
-    public synchronized void removeClient(String guestName) {
-        clients.removeIf(c -> c.getGuestName().equals(guestName));
+    public SalesAnalytics getSalesAnalytics() {
+        return salesAnalytics;
     }
 
     /**
-     Returns a Map containing the waiting list for a specific seat type, or the entire waiting list if no seat type is specified.
-     @param seatType the SeatType to filter the waiting list by, or null to return the entire waiting list
-     @return a Map containing the waiting list, where the keys are SeatTypes and the values are Lists of Clients
+     * Returns the view of the ledger that keeps the revenue of each seat category.
+     * @return the revenue view
+     */
+    public RevenueView getRevenueView() {
+        return revenueView;
+    }
+
+    /**
+     * Records an action in the ledger, together with the price of the seats it concerns: the current price for a
+     * booking, and for a cancellation the price the guest paid, so that a change of the prices in between does not
+     * change the refund.
+     * @param type the kind of action
+     * @param guestName the name of the guest
+     * @param category the seat category the action concerns
+     * @param numberOfSeats the number of seats the action concerns
+     * @throws RemoteException if the price of the seats cannot be calculated
+     */
+    private void record(EventType type, String guestName, SeatCategory category, int numberOfSeats) throws RemoteException {
+        BigDecimal amount = switch (type) {
+            case WAITLISTED -> BigDecimal.ZERO;
+            case CANCELLED -> refundOf(guestName, category, numberOfSeats);
+            default -> theaterDAO.calculatePrice(category, numberOfSeats);
+        };
+        ledger.append(type, guestName, category, numberOfSeats, amount);
+    }
+
+    /**
+     * Returns the price the guest paid for the given number of their seats. While the prices have not changed since,
+     * that is the current price, which the DAO already holds, so the refund is then the same object.
+     */
+    private BigDecimal refundOf(String guestName, SeatCategory category, int numberOfSeats) throws RemoteException {
+        long paidCents = manifest.refundOf(guestDirectory.idOf(guestName), category, numberOfSeats);
+        BigDecimal price = theaterDAO.calculatePrice(category, numberOfSeats);
+        return BookingEvent.cents(price) == paidCents ? price : BigDecimal.valueOf(paidCents, 2);
+    }
+
+    /**
+     * Records a booking whose seats the DAO has already taken. If the ledger cannot store it, the seats are given back
+     * to the theater before the failure is passed on, so the theater never holds seats that no booking explains.
+     * @param type BOOKED or PROMOTED
+     * @param guestName the name of the guest
+     * @param category the seat category of the booking
+     * @param numberOfSeats the number of booked seats
+     * @throws RemoteException if the price of the seats cannot be calculated
+     * @throws UncheckedIOException if the booking cannot be stored
+     */
+    private void recordBooking(EventType type, String guestName, SeatCategory category, int numberOfSeats) throws RemoteException {
+        try {
+            record(type, guestName, category, numberOfSeats);
+        } catch (UncheckedIOException e) {
+            giveBack(category, numberOfSeats, guestName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the seats of a booking that could not be recorded back to the theater, adding any failure to do so to
+     * the failure of the recording.
+     */
+    private void giveBack(SeatCategory category, int numberOfSeats, String guestName, UncheckedIOException failure) {
+        try {
+            if (!theaterDAO.cancel(category, numberOfSeats, guestName)) {
+                failure.addSuppressed(new IllegalStateException("Could not give back the " + numberOfSeats + " "
+                        + category + " seats of " + guestName));
+            }
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     Returns a Map containing the waiting list for a specific seat category, or the entire waiting list if no seat category is specified.
+     The lists are copies, so callers can neither change the waiting list nor see it change while they read it.
+     When nobody is waiting, the shared empty map is returned, which cannot be changed either.
+     @param category the SeatCategory to filter the waiting list by, or null to return the entire waiting list
+     @return a Map containing the waiting list, where the keys are SeatCategories and the values are Lists of Clients
      @throws RemoteException if a communication-related exception occurs
      */
     @Override
-    public synchronized Map<SeatType, List<Client>> getWaitingList(SeatType seatType) throws RemoteException {
-        Map<SeatType, List<Client>> result = new HashMap<>();
-        if (seatType == null) {
-            result.putAll(waitingList);
-        } else {
-            List<Client> clients = waitingList.get(seatType);
-            if (clients != null) {
-                result.put(seatType, new ArrayList<>(clients));
+    public Map<SeatCategory, List<Client>> getWaitingList(SeatCategory category) throws RemoteException {
+        synchronized (waitingList) {
+            // The category is looked up directly, since walking the entries of the map creates an iterator
+            List<Client> waitingClients = category == null ? null : waitingList.get(category);
+            if (waitingList.isEmpty() || category != null && waitingClients == null) {
+                return Collections.emptyMap();
+            }
+            Map<SeatCategory, List<Client>> result = new HashMap<>();
+            if (category != null) {
+                result.put(category, new ArrayList<>(waitingClients));
+                return result;
             }
+            for (Map.Entry<SeatCategory, List<Client>> entry : waitingList.entrySet()) {
+                result.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return result;
         }
-        return result;
     }
 
     /**
-     Adds a new Client to the waiting list for a specific seat type.
-     @param seatType the SeatType to add the Client to
+     Adds a new Client to the waiting list for a specific seat category.
+     @param category the SeatCategory to add the Client to
      @param guestName the name of the guest to add
      @param numberOfSeats the number of seats the guest wants to book
+     @throws RetryLaterException if the caller or the guest has exceeded its rate limit
      @throws RemoteException if a communication-related exception occurs
-     @throws IllegalArgumentException if guestName is null or empty
+     @throws IllegalArgumentException if guestName is null or empty, or the seat category is invalid
+     @throws UncheckedIOException if the entry cannot be stored, in which case the guest is not added
      */
     @Override
-    public void addToWaitingList(SeatType seatType, String guestName, int numberOfSeats) throws RemoteException {
+    public void addToWaitingList(SeatCategory category, String guestName, int numberOfSeats) throws RemoteException {
+        checkRateLimit(guestName);
         synchronized (waitingList) {
+            checkUnsealed();
             if (guestName == null || guestName.isEmpty()) {
                 throw new IllegalArgumentException("Guest name is required");
             }
-            List<Client> clients = waitingList.getOrDefault(seatType, new ArrayList<>());
-            clients.add(new Client(guestName, numberOfSeats,seatType));
-            waitingList.put(seatType, clients);
-            System.out.println("Successfully added " + guestName + " to the waiting list for " + numberOfSeats + " " + seatType + " seats.");
+            if (!theaterDAO.getCategories().contains(category)) {
+                throw new IllegalArgumentException("Invalid seatType: " + category);
+            }
+            record(EventType.WAITLISTED, guestName, category, numberOfSeats);
+            waitingList.computeIfAbsent(category, k -> new ArrayList<>()).add(new Client(guestName, numberOfSeats, category));
+            System.out.println("Successfully added " + guestName + " to the waiting list for " + numberOfSeats + " " + category + " seats.");
         }
     }
 
     /**
-     Calculates the price of a given number of seats of a specific type.
-     @param seatType the type of seat to calculate the price for
+     Returns the sales figures of every seat category: seats sold, revenue, cancellations, waiting list conversion and
+     the sales of the last hour. The figures are kept up to date by the analytics view of the ledger, so the report
+     is served from counters without scanning the bookings or taking the booking lock.
+     @return a map that maps each seat category to its sales figures, ordered by id
+     @throws RemoteException if a communication-related exception occurs
+     */
+    @Override
+    public Map<SeatCategory, ZoneSales> salesReport() throws RemoteException {
+        return salesAnalytics.report();
+    }
+
+    /**
+     Returns the position of a guest in the admission queue of a specific seat category.
+     @param category the SeatCategory of the admission queue
+     @param guestName the name of the guest
+     @return the number of requests ahead of the guest, 0 if the guest is next, or -1 if the guest is not queued
+     @throws RemoteException if a communication-related exception occurs
+     */
+    @Override
+    public long queuePosition(SeatCategory category, String guestName) throws RemoteException {
+        return admissionQueue.position(category, guestName);
+    }
+
+    /**
+     Calculates the price of a given number of seats of a specific category.
+     @param category the category of seat to calculate the price for
      @param numberOfSeats the number of seats to calculate the price for
-     @return the price of the given number of seats of the specified type
+     @return the price of the given number of seats of the specified category
      @throws RemoteException if there is a problem with the remote method call
      */
     @Override
-    public synchronized BigDecimal calculatePrice(SeatType seatType, int numberOfSeats) throws RemoteException {
-        return theaterDAO.calculatePrice(seatType, numberOfSeats);
+    public synchronized BigDecimal calculatePrice(SeatCategory category, int numberOfSeats) throws RemoteException {
+        return theaterDAO.calculatePrice(category, numberOfSeats);
     }
 
     /**
-     Notifies clients in the waiting list for a specific seat type and number of seats that a cancellation has occurred.
+     Notifies clients in the waiting list for a specific seat category and number of seats that a cancellation has occurred.
      @param numberOfSeats the number of seats that were cancelled
-     @param seatType the type of seat that was cancelled
+     @param category the category of seat that was cancelled
      @return a message to be displayed to the clients in the waiting list
      @throws RemoteException if there is an issue with the remote method call
      */
     @Override
-    public synchronized String notifyGuestsInWaitingList(int numberOfSeats, SeatType seatType) throws RemoteException {
-        Map<SeatType, List<Client>> waitingList = getWaitingList(seatType);
+    public synchronized String notifyGuestsInWaitingList(int numberOfSeats, SeatCategory category) throws RemoteException {
+        Map<SeatCategory, List<Client>> waitingList = getWaitingList(category);
         if (waitingList != null && waitingList.size() > 0) {
             StringBuilder sb = new StringBuilder();
             for (List<Client> clients : waitingList.values()) {
                 for (Client client : clients) {
-                    String msg = client.notifyCancellation(client.getSeatType(),client.getNumberOfSeats()); // Call the desired method on the Client object
+                    String msg = client.notifyCancellation(client.getSeatCategory(),client.getNumberOfSeats()); // Call the desired method on the Client object
                     sb.append(msg).append("\n");
                 }
             }
@@ -122,177 +567,302 @@ public class TheaterServiceImpl extends UnicastRemoteObject  implements TheaterR
     }
 
     /**
-     * Retrieves the price of a specific seat type.
-     * @param seatType the seat type to get the price for
-     * @return the price of the seat type
+     * Retrieves the seat categories of the theater, so that clients can resolve the codes of seat categories that
+     * are not in the SeatType enum.
+     * @return the seat categories, ordered by id
      * @throws RemoteException if there is a problem with the remote invocation
      */
     @Override
-    public synchronized BigDecimal getPrice(SeatType seatType) throws RemoteException {
-        return theaterDAO.getPrice(seatType);
+    public SeatCategories getCategories() throws RemoteException {
+        return theaterDAO.getCategories();
     }
 
     /**
-     * Retrieves the availability of each seat type.
-     * @return a map with the availability of each seat type
+     * Retrieves the price of a specific seat category.
+     * @param category the seat category to get the price for
+     * @return the price of the seat category
      * @throws RemoteException if there is a problem with the remote invocation
      */
     @Override
-    public synchronized Map<SeatType, Integer> getAvailability() throws RemoteException {
+    public synchronized BigDecimal getPrice(SeatCategory category) throws RemoteException {
+        return theaterDAO.getPrice(category);
+    }
+
+    /**
+     * Retrieves the availability of each seat category. The DAO keeps the map until the availability changes, so
+     * reads between bookings share it and do not take the lock of the service.
+     * @return an unmodifiable map with the availability of each seat category
+     * @throws RemoteException if there is a problem with the remote invocation
+     */
+    @Override
+    public Map<SeatCategory, Integer> getAvailability() throws RemoteException {
         return theaterDAO.getAvailability();
     }
 
     /**
-     * Updates the availability of a specific seat type.
-     * @param seatType the seat type to update the availability for
+     * Retrieves the changes of the availability since a version the client has seen, so that clients that poll the
+     * availability receive only the seat categories that changed. The changes are served by the availability feed of
+     * the ledger, without taking the booking lock.
+     * @param sinceVersion the version of the last delta the client applied, or -1 if it has none
+     * @return the changed seat categories and the new version, no categories if nothing changed, or every category
+     * if the client is too far behind
+     * @throws RemoteException if there is a problem with the remote invocation
+     */
+    @Override
+    public AvailabilityDelta getAvailabilityChanges(long sinceVersion) throws RemoteException {
+        return availabilityFeed.changesSince(sinceVersion);
+    }
+
+    /**
+     * Updates the availability of a specific seat category. The change is recorded in the ledger as a capacity change,
+     * so the availability views and the availability feed follow it.
+     * @param category the seat category to update the availability for
      * @param seats    the number of seats to update the availability with
      * @throws RemoteException if there is a problem with the remote invocation
+     * @throws IllegalArgumentException if the seats booked would not fit in the reduced capacity
      */
     @Override
-    public synchronized void updateAvailability(SeatType seatType, int seats, boolean cancel) throws RemoteException {
-        theaterDAO.updateAvailability(seatType,seats, cancel);
+    public synchronized void updateAvailability(SeatCategory category, int seats, boolean cancel) throws RemoteException {
+        checkUnsealed();
+        theaterDAO.updateAvailability(category,seats, cancel);
+        ledger.append(EventType.CAPACITY_CHANGED, null, category, cancel ? seats : -seats, BigDecimal.ZERO);
     }
 
     /**
-    Books the specified number of seats of the specified seat type for the specified guest name.
+    Books the specified number of seats of the specified seat category for the specified guest name.
+    The request first waits its turn in the admission queue of the seat category, so that concurrent bookings are
+    admitted in arrival order at the configured rate instead of all competing for the booking lock at once.
     If there are enough seats available, the seats will be booked for the guest and a client object will be added to the client list.
     If there are not enough seats available, the guest will be added to the waiting list and notified accordingly.
-    If the booking is successful and there are any waiting guests for the same seat type, the first guest in the waiting list will be booked and notified.
-    @param seatType the type of the seat
+    If the booking is successful and there are any waiting guests for the same seat category, the first guest in the waiting list will be booked and notified.
+    @param category the category of the seat
     @param seats the number of seats to book
     @param guestName the name of the guest booking the seats
     @return true if the seats were successfully booked, false otherwise
+    @throws RetryLaterException if the caller or the guest has exceeded its rate limit, or if the admission queue of
+    the seat category is full
     @throws RemoteException if a communication-related exception occurs
+    @throws UncheckedIOException if the booking cannot be stored, in which case the seats are given back
     */
     @Override
-    public synchronized boolean book(SeatType seatType, int seats, String guestName) throws RemoteException {
+    public boolean book(SeatCategory category, int seats, String guestName) throws RemoteException {
+        checkRateLimit(guestName);
+        admissionQueue.enter(category, guestName);
+        return bookAdmitted(category, seats, guestName);
+    }
+
+    /**
+     * Books the specified number of seats for a request that has been admitted by the admission queue.
+     * @param category the category of the seat
+     * @param seats the number of seats to book
+     * @param guestName the name of the guest booking the seats
+     * @return true if the seats were successfully booked, false otherwise
+     * @throws RemoteException if a communication-related exception occurs
+     */
+    private synchronized boolean bookAdmitted(SeatCategory category, int seats, String guestName) throws RemoteException {
+        checkUnsealed();
         // Try to book from the waiting list if possible
-        tryBookingFromWaitingList(seatType);
-        int availableSeats = theaterDAO.getAvailability().get(seatType);
-        if(availableSeats < seats){
-            System.out.println("Sorry, there are only " + availableSeats + " " + seatType + " seats available.");
+        tryBookingFromWaitingList(category);
+        int availableSeats = theaterDAO.getAvailable(category);
+        if(availableSeats + theaterDAO.getOverbookAllowance(category) < seats){
+            System.out.println("Sorry, there are only " + Math.max(0, availableSeats) + " " + category + " seats available.");
             return false;
         }
-        boolean success = theaterDAO.book(seatType,seats,guestName);
+        boolean success = theaterDAO.book(category,seats,guestName);
         if (success) {
-            Client client = new Client(guestName, seats, seatType);
-            addClient(client);
+            recordBooking(EventType.BOOKED, guestName, category, seats);
             return true;
         }else{
             // Seat type is full, add client to waiting list
-            List<Client> clients = waitingList.getOrDefault(seatType, new ArrayList<>());
-            clients.add(new Client(guestName, seats, seatType));
-            waitingList.put(seatType, clients);
-            System.out.println("Sorry, the requested " + seats + " " + seatType
+            synchronized (waitingList) {
+                record(EventType.WAITLISTED, guestName, category, seats);
+                waitingList.computeIfAbsent(category, k -> new ArrayList<>()).add(new Client(guestName, seats, category));
+            }
+            System.out.println("Sorry, the requested " + seats + " " + category
                     + " seats are currently unavailable. You have been added to the waiting list.");
             return false;
         }
     }
 
     /**
-    Cancels the specified number of seats of the given type that were booked by the guest with the given name.
-    Also updates the booking of the guest if they have remaining seats after the cancellation.
-    @param seatType the type of the seat to cancel
+    Books seats of several seat categories for the specified guest name as a single transaction: either all the
+    requested seats are booked or none of them are.
+    The request waits its turn in the admission queue of every requested seat category, in the order of their ids.
+    As for a single booking, the guests already waiting for those seat categories are then served first, and the seats
+    are reserved by the DAO, which locks only the requested seat categories, and recorded under the lock of the service.
+    A group booking that cannot be served in full is not added to the waiting list.
+    @param seats a map from each requested seat category to the number of seats to book
+    @param guestName the name of the guest booking the seats
+    @return true if all the seats were successfully booked, false if none were booked
+    @throws RetryLaterException if the caller or the guest has exceeded its rate limit, or if the admission queue of
+    one of the seat categories is full
+    @throws RemoteException if a communication-related exception occurs
+    @throws IllegalArgumentException if no seats are requested, a seat count is not positive or guestName is empty
+    @throws UncheckedIOException if the booking cannot be stored, in which case all the seats are given back
+    */
+    @Override
+    public boolean bookGroup(Map<SeatCategory, Integer> seats, String guestName) throws RemoteException {
+        checkRateLimit(guestName);
+        if (guestName == null || guestName.isEmpty()) {
+            throw new IllegalArgumentException("Guest name is required");
+        }
+        if (seats == null || seats.isEmpty()) {
+            throw new IllegalArgumentException("At least one seat type is required");
+        }
+        Map<SeatCategory, Integer> ordered = new TreeMap<>(Comparator.comparingInt(SeatCategory::id));
+        for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+            if (!theaterDAO.getCategories().contains(entry.getKey()) || entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Invalid group booking: " + seats);
+            }
+            ordered.put(entry.getKey(), entry.getValue());
+        }
+        for (SeatCategory category : ordered.keySet()) {
+            admissionQueue.enter(category, guestName);
+        }
+        return bookGroupAdmitted(ordered, guestName);
+    }
+
+    /**
+     * Books a group of seats for a request that has been admitted by the admission queue of every seat category.
+     * Like a single booking, it first serves the guests waiting for those seat categories, and it takes the seats and
+     * records them under the lock of the service.
+     * @param seats the seats to book, ordered by the id of their seat category
+     * @param guestName the name of the guest booking the seats
+     * @return true if all the seats were successfully booked, false if none were booked
+     * @throws RemoteException if a communication-related exception occurs
+     */
+    private synchronized boolean bookGroupAdmitted(Map<SeatCategory, Integer> seats, String guestName) throws RemoteException {
+        checkUnsealed();
+        for (SeatCategory category : seats.keySet()) {
+            tryBookingFromWaitingList(category);
+        }
+        if (!theaterDAO.bookAll(seats, guestName)) {
+            System.out.println("Sorry, the requested group booking " + seats + " for " + guestName + " cannot be served in full.");
+            return false;
+        }
+        BigDecimal[] amounts = new BigDecimal[theaterDAO.getCategories().size()];
+        for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+            amounts[entry.getKey().id()] = theaterDAO.calculatePrice(entry.getKey(), entry.getValue());
+        }
+        try {
+            ledger.appendAll(EventType.BOOKED, guestName, seats, amounts);
+        } catch (UncheckedIOException e) {
+            for (Map.Entry<SeatCategory, Integer> entry : seats.entrySet()) {
+                giveBack(entry.getKey(), entry.getValue(), guestName, e);
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+    Cancels the specified number of seats of the given category that were booked by the guest with the given name.
+    The seats are given back only if the guest has booked at least that many seats of the given category, counting
+    all their bookings of it. The seats are taken from the latest of those bookings first.
+    @param category the category of the seat to cancel
     @param numberOfSeats the number of seats to cancel
     @param guestName the name of the guest who booked the seats
     @return true if the cancellation was successful, false otherwise (e.g., if the guest does not have enough seats to cancel)
+    @throws RetryLaterException if the service is draining
     @throws RemoteException if there is a remote communication error with the server
+    @throws UncheckedIOException if the cancellation cannot be stored, in which case the seats stay booked
     */
     @Override
-    public synchronized boolean cancel(SeatType seatType, int numberOfSeats, String guestName) throws RemoteException {
-        boolean success = theaterDAO.cancel(seatType,numberOfSeats, guestName);
+    public synchronized boolean cancel(SeatCategory category, int numberOfSeats, String guestName) throws RemoteException {
+        checkAccepting();
+        checkUnsealed();
+        // Check that the guest has enough seats in the booking before giving them back
+        int bookedSeats = manifest.seatsOf(guestDirectory.idOf(guestName), category);
+        if (bookedSeats == 0 || numberOfSeats > bookedSeats) {
+            return false; // user can't cancel more seats than they have booked
+        }
+        boolean success = theaterDAO.cancel(category,numberOfSeats, guestName);
         if (success) {
-            // Check if the guest has remaining seats in the booking
-            for (Client client : clients) {
-                if (client.getGuestName().equals(guestName)) {
-                    int allSeats = client.getNumberOfSeats();
-                    if (numberOfSeats > allSeats) {
-                        return false; // user can't cancel more seats than they have booked
-                    }
-                    int remainingSeats = allSeats - numberOfSeats;
-                    if (remainingSeats > 0) {
-                        // update the existing booking for the guest with the remaining seats
-                        client.setNumberOfSeats(remainingSeats);
-                    } else {
-                        removeClient(guestName);
+            // The manifest keeps the remaining seats of the bookings, and drops those with none left
+            try {
+                record(EventType.CANCELLED, guestName, category, numberOfSeats);
+            } catch (UncheckedIOException e) {
+                try {
+                    if (!theaterDAO.book(category, numberOfSeats, guestName)) {
+                        e.addSuppressed(new IllegalStateException("Could not take back the " + numberOfSeats + " "
+                                + category + " seats of " + guestName));
                     }
-                    break;
+                } catch (RuntimeException undo) {
+                    e.addSuppressed(undo);
                 }
+                throw e;
             }
             // Try to book from the waiting list if possible
-            tryBookingFromWaitingList(seatType);
+            tryBookingFromWaitingList(category);
             // Notify the waiting list if a cancellation has been made on a specific seat
-            notifyGuestsInWaitingList(numberOfSeats, seatType);
+            notifyGuestsInWaitingList(numberOfSeats, category);
         }
         return success;
     }
 
     /**
-     * Attempts to book seats for a waiting client of the given seat type, if any are on the waiting list.
-     * If a booking is made, the client is removed from the waiting list and added to the list of current clients.
-     * The waiting list for the specified seat type is emptied after successful bookings.
-     * @param seatType the type of seat to book for a waiting client
+     * Books seats for the waiting clients of the given seat category, in the order they joined the waiting list,
+     * until the first one whose seats are not available.
+     * Each client is removed from the waiting list only once its seats are booked, under the lock of the waiting
+     * list, so clients that join the waiting list in the meantime are kept. Only this method removes clients, and it
+     * holds the lock of the service, so the client at the head of the list cannot change between booking and removal.
+     * @param category the category of seat to book for a waiting client
      * @throws RemoteException if there is a problem communicating with the theater server
      */
-    private synchronized void tryBookingFromWaitingList(SeatType seatType) throws RemoteException {
-        // Check if there are any clients waiting for this seat type
-        List<Client> waitingClients;
-
-        synchronized (waitingList) {
-            waitingClients = new ArrayList<>(waitingList.getOrDefault(seatType, Collections.emptyList()));
-        }
-
-        if (!waitingClients.isEmpty()) {
-            List<Client> bookedClients = new ArrayList<>();
-
-            for (Client c : waitingClients) {
-                boolean successWaiting;
-
-                synchronized (theaterDAO) {
-                    successWaiting = theaterDAO.book(c.getSeatType(), c.getNumberOfSeats(), c.getGuestName());
-                }
-
-                if (!successWaiting) {
+    private synchronized void tryBookingFromWaitingList(SeatCategory category) throws RemoteException {
+        while (true) {
+            Client next;
+            synchronized (waitingList) {
+                List<Client> waitingClients = waitingList.get(category);
+                if (waitingClients == null || waitingClients.isEmpty()) {
                     return;
                 }
-
-                synchronized (this) {
-                    addClient(c);
-                    System.out.println("Successfully booked " + c.getNumberOfSeats() + " " + c.getSeatType()
-                            + " seat(s) for " + c.getGuestName() + " from the waiting list.");
-                }
-
-                bookedClients.add(c);
+                next = waitingClients.get(0);
+            }
+            if (!theaterDAO.book(next.getSeatCategory(), next.getNumberOfSeats(), next.getGuestName())) {
+                return;
             }
-
             synchronized (waitingList) {
-                waitingClients.removeAll(bookedClients);
-                // Empty the waitingList for the specified seatType
-                waitingList.remove(seatType);
+                try {
+                    recordBooking(EventType.PROMOTED, next.getGuestName(), next.getSeatCategory(), next.getNumberOfSeats());
+                } catch (UncheckedIOException e) {
+                    // The action that freed the seats stands; the client stays first in line for the next one
+                    System.out.println("Could not promote " + next.getGuestName() + " from the waiting list: " + e.getMessage());
+                    return;
+                }
+                List<Client> waitingClients = waitingList.get(category);
+                waitingClients.remove(0);
+                if (waitingClients.isEmpty()) {
+                    waitingList.remove(category);
+                }
             }
+            System.out.println("Successfully booked " + next.getNumberOfSeats() + " " + next.getSeatCategory()
+                    + " seat(s) for " + next.getGuestName() + " from the waiting list.");
         }
     }
 
     /**
      Returns a StringBuilder object containing a list of available seats and their prices.
-     The list is created by calling the getAvailability and getPrice methods of the theaterDAO object.
-     The StringBuilder object is formatted with the number of seats, seat type, seat code, and price.
+     The list is created by calling the getAvailability and getPrice methods of the theaterDAO object, for every
+     seat category the theater is configured with.
+     The StringBuilder object is formatted with the number of seats, seat category, seat code, and price.
      @return a StringBuilder object containing a list of available seats and their prices.
      @throws RemoteException if there is a remote communication problem.
      */
     @Override
     public synchronized StringBuilder list() throws RemoteException {
         StringBuilder availableSeats = new StringBuilder();
-        Map<SeatType, Integer> availability = theaterDAO.getAvailability();
-        for (SeatType seatType : SeatType.values()) {
-            int seats = availability.get(seatType);
-            BigDecimal price = theaterDAO.getPrice(seatType);
+        Map<SeatCategory, Integer> availability = theaterDAO.getAvailability();
+        for (SeatCategory category : theaterDAO.getCategories().all()) {
+            // An overbooked category has fewer than zero seats left
+            int seats = Math.max(0, availability.get(category));
+            BigDecimal price = theaterDAO.getPrice(category);
             availableSeats
                     .append(seats)
                     .append(" Seats ")
-                    .append(seatType)
+                    .append(category)
                     .append(" (Code: ")
-                    .append(seatType.name())
+                    .append(category.code())
                     .append(") - Price: ")
                     .append(price)
                     .append(" €\n");
@@ -309,14 +879,37 @@ public class TheaterServiceImpl extends UnicastRemoteObject  implements TheaterR
      */
     @Override
     public synchronized String guests() throws RemoteException {
-        int people = clients.size();
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("There are %d people for the show.\n", people));
-        System.out.printf("There are %d people for the show.\n", people);
+        String guests = describeGuests(manifest.bookings());
+        System.out.print(guests);
+        return guests;
+    }
 
-        for(Client client : clients){
-            sb.append(String.format("%s has %d seats in %s.\n",client.getGuestName(), client.getNumberOfSeats(), client.getSeatType()));
-            System.out.printf("%s has %d seats in %s.\n", client.getGuestName(), client.getNumberOfSeats(), client.getSeatType());
+    /**
+     Returns a string containing information about the guests who had booked seats for the show at the given time.
+     The guest manifest is rebuilt by replaying the ledger up to that moment, so this can be used to audit past states
+     without affecting the current bookings.
+     @param timestamp the time of interest, in milliseconds since the epoch
+     @return a string containing information about the guests who had booked seats at that time.
+     @throws RemoteException if a communication-related exception occurs.
+     */
+    @Override
+    public String guestsAt(long timestamp) throws RemoteException {
+        GuestManifestView pastManifest = new GuestManifestView(theaterDAO.getCategories());
+        ledger.replay(pastManifest, timestamp);
+        return describeGuests(pastManifest.bookings());
+    }
+
+    /**
+     Formats the given bookings as a guest list.
+     @param bookings the bookings to describe
+     @return the number of guests followed by one line for each booking
+     */
+    private String describeGuests(List<Booking> bookings) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("There are %d people for the show.\n", bookings.size()));
+        for (Booking booking : bookings) {
+            sb.append(String.format("%s has %d seats in %s.\n", guestDirectory.nameOf(booking.guestId()),
+                    booking.numberOfSeats(), booking.category()));
         }
         return sb.toString();
     }
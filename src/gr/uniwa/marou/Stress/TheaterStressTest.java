@@ -0,0 +1,417 @@
+package gr.uniwa.marou.Stress;
+
+import gr.uniwa.marou.DAO.TheaterDAOImpl;
+import gr.uniwa.marou.Ledger.BookingEvent;
+import gr.uniwa.marou.Service.AdmissionQueue;
+import gr.uniwa.marou.Service.RateLimiter;
+import gr.uniwa.marou.Service.TheaterServiceImpl;
+import gr.uniwa.marou.model.Client;
+import gr.uniwa.marou.model.SeatCategories;
+import gr.uniwa.marou.model.SeatCategory;
+import gr.uniwa.marou.model.Theater;
+import gr.uniwa.marou.model.TheaterConfig;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ The TheaterStressTest hammers TheaterDAOImpl and TheaterServiceImpl from many threads at once and checks the
+ invariants that every booking path must keep, whatever the interleaving:
+ no oversell: no seat category is ever seen with more free seats than its capacity, or overbooked by more than its
+ overbook allowance;
+ conservation: once the threads are done, the free seats and the booked seats of every category add up to its
+ capacity, and the availability derived from the ledger agrees with the theater;
+ waiting list consistency: every waiting list entry that was recorded and not promoted is still on the waiting list,
+ exactly once, and the snapshots handed out by the service are never changed by later bookings.
+ Besides the random workloads, small races between two actors are repeated many times in the style of jcstress,
+ and the outcomes that must never happen, such as two guests both getting the last seat, are counted.
+ Every thread draws its operations from a Random seeded from theater.stress.seed, so a failing run can be
+ repeated with the same workload. The number of threads, operations per thread and race rounds are set with
+ theater.stress.threads, theater.stress.operations and theater.stress.rounds.
+ The process exits with status 1 if any invariant was violated.
+ */
+public class TheaterStressTest {
+
+    private static final int SEATS_PER_CATEGORY = 40;
+    private static final int OVERBOOK_SEATS = 4;
+    private static final int GUESTS_PER_THREAD = 8;
+
+    private final long seed;
+    private final int threads;
+    private final int operations;
+    private final int rounds;
+    private final TheaterConfig config;
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+    private PrintStream out = System.out;
+
+    /**
+     Constructs a new TheaterStressTest.
+     @param seed the seed of the workloads
+     @param threads the number of threads that run each workload
+     @param operations the number of operations each thread runs
+     @param rounds the number of times each two-actor race is repeated
+     @param config the configuration that provides the seat categories and prices of the scratch theaters
+     */
+    public TheaterStressTest(long seed, int threads, int operations, int rounds, TheaterConfig config) {
+        this.seed = seed;
+        this.threads = threads;
+        this.operations = operations;
+        this.rounds = rounds;
+        this.config = config;
+    }
+
+    /**
+     Runs every scenario and reports the violated invariants.
+     @param args not used
+     @throws Exception if a scenario cannot be set up
+     */
+    public static void main(String[] args) throws Exception {
+        TheaterStressTest test = new TheaterStressTest(Long.getLong("theater.stress.seed", 42L),
+                Integer.getInteger("theater.stress.threads", 8),
+                Integer.getInteger("theater.stress.operations", 5_000),
+                Integer.getInteger("theater.stress.rounds", 2_000),
+                TheaterConfig.loadDefault());
+        List<String> failures = test.run();
+        for (String failure : failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        System.out.println(failures.isEmpty() ? "All invariants held." : failures.size() + " invariant(s) violated.");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     Runs every scenario.
+     @return a description of every violated invariant, empty if all of them held
+     @throws Exception if a scenario cannot be set up
+     */
+    public List<String> run() throws Exception {
+        out = System.out;
+        // The service reports every booking on the console; keep the report of the test readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            report("DAO bookings and cancellations", this::daoWorkload);
+            report("Race for the last seat", this::lastSeatRace);
+            report("Race between a group and a single booking", this::groupRace);
+            report("Service bookings, cancellations and waiting lists", this::serviceWorkload);
+        } finally {
+            System.setOut(out);
+        }
+        return new ArrayList<>(failures);
+    }
+
+    private void report(String name, Scenario scenario) throws Exception {
+        int before = failures.size();
+        long start = System.nanoTime();
+        scenario.run();
+        out.println(String.format("%-52s %s in %d ms", name, failures.size() == before ? "ok" : "FAILED",
+                (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     Books, cancels and group-books seats straight through the DAO. Every thread keeps count of the seats it holds,
+     so once the threads are done the free seats of each category must be its capacity minus the seats held.
+     The first category may be overbooked by a few seats, and must never be overbooked by more.
+     */
+    private void daoWorkload() throws Exception {
+        Theater theater = scratchTheater(SEATS_PER_CATEGORY);
+        TheaterDAOImpl dao = new TheaterDAOImpl(theater);
+        SeatCategories categories = theater.getCategories();
+        dao.updateOverbookAllowance(categories.byId(0), OVERBOOK_SEATS);
+        int[][] held = new int[threads][categories.size()];
+        AtomicBoolean done = new AtomicBoolean();
+        Thread observer = observe(done, () -> checkBounds("DAO", dao.getAvailability(), dao));
+        runThreads(thread -> {
+            Random random = new Random(seed + thread);
+            int[] mine = held[thread];
+            for (int i = 0; i < operations; i++) {
+                SeatCategory category = categories.byId(random.nextInt(categories.size()));
+                int seats = 1 + random.nextInt(4);
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        if (dao.book(category, seats, "dao-" + thread)) {
+                            mine[category.id()] += seats;
+                        }
+                    }
+                    case 1 -> {
+                        if (mine[category.id()] >= seats && dao.cancel(category, seats, "dao-" + thread)) {
+                            mine[category.id()] -= seats;
+                        }
+                    }
+                    default -> {
+                        SeatCategory other = categories.byId(random.nextInt(categories.size()));
+                        Map<SeatCategory, Integer> group = new LinkedHashMap<>();
+                        group.put(category, seats);
+                        group.merge(other, 1, Integer::sum);
+                        if (dao.bookAll(group, "dao-" + thread)) {
+                            for (Map.Entry<SeatCategory, Integer> entry : group.entrySet()) {
+                                mine[entry.getKey().id()] += entry.getValue();
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        done.set(true);
+        observer.join();
+        Map<SeatCategory, Integer> availability = dao.getAvailability();
+        for (SeatCategory category : categories.all()) {
+            int booked = 0;
+            for (int[] mine : held) {
+                booked += mine[category.id()];
+            }
+            check(availability.get(category) + booked == SEATS_PER_CATEGORY, "DAO conservation: " + category + " has "
+                    + availability.get(category) + " free and " + booked + " booked seats of " + SEATS_PER_CATEGORY);
+        }
+    }
+
+    /**
+     Two guests race for the last seat of a category. Exactly one of them must get it.
+     */
+    private void lastSeatRace() throws Exception {
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for (int round = 0; round < rounds; round++) {
+            Theater theater = scratchTheater(1);
+            TheaterDAOImpl dao = new TheaterDAOImpl(theater);
+            SeatCategory category = theater.getCategories().byId(round % theater.getCategories().size());
+            boolean[] results = race(() -> dao.book(category, 1, "first"), () -> dao.book(category, 1, "second"));
+            outcomes.merge(results[0] + "," + results[1], 1, Integer::sum);
+            check(results[0] != results[1] && theater.getAvailable(category) == 0,
+                    "Last seat: outcome " + results[0] + "," + results[1] + " leaves "
+                            + theater.getAvailable(category) + " seats");
+        }
+        printOutcomes("Last seat", outcomes);
+    }
+
+    /**
+     A group booking of one seat in each of two categories races a single booking of the last seat of the second
+     category. Exactly one of them must succeed, and the group must not keep the seat of the first category if it
+     fails.
+     */
+    private void groupRace() throws Exception {
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for (int round = 0; round < rounds; round++) {
+            Theater theater = scratchTheater(1);
+            TheaterDAOImpl dao = new TheaterDAOImpl(theater);
+            SeatCategory first = theater.getCategories().byId(0);
+            SeatCategory second = theater.getCategories().byId(1);
+            Map<SeatCategory, Integer> group = Map.of(first, 1, second, 1);
+            boolean[] results = race(() -> dao.bookAll(group, "group"), () -> dao.book(second, 1, "single"));
+            outcomes.merge(results[0] + "," + results[1], 1, Integer::sum);
+            int expectedFirst = results[0] ? 0 : 1;
+            check(results[0] != results[1] && theater.getAvailable(second) == 0
+                            && theater.getAvailable(first) == expectedFirst,
+                    "Group race: outcome " + results[0] + "," + results[1] + " leaves " + theater.getAvailable(first)
+                            + " and " + theater.getAvailable(second) + " seats");
+        }
+        printOutcomes("Group race", outcomes);
+    }
+
+    /**
+     Runs a mix of bookings, group bookings, cancellations, waiting list entries and reads against the service of a
+     small theater, so that categories sell out and waiting guests get promoted all the time. The snapshots the
+     service hands out are changed by the threads, which must not affect the service, and iterated while other
+     threads book, which must not fail.
+     */
+    private void serviceWorkload() throws Exception {
+        Theater theater = scratchTheater(SEATS_PER_CATEGORY);
+        SeatCategories categories = theater.getCategories();
+        TheaterDAOImpl dao = new TheaterDAOImpl(theater);
+        TheaterServiceImpl service = new TheaterServiceImpl(dao,
+                new AdmissionQueue(categories, Integer.MAX_VALUE, Integer.MAX_VALUE),
+                new RateLimiter(Integer.MAX_VALUE, 16_000), new RateLimiter(Integer.MAX_VALUE, 16_000));
+        AtomicBoolean done = new AtomicBoolean();
+        Thread observer = observe(done, () -> checkBounds("Service", service.getAvailability(), dao));
+        try {
+            runThreads(thread -> {
+                Random random = new Random(seed * 31 + thread);
+                for (int i = 0; i < operations; i++) {
+                    SeatCategory category = categories.byId(random.nextInt(categories.size()));
+                    String guestName = "guest-" + thread + "-" + random.nextInt(GUESTS_PER_THREAD);
+                    int seats = 1 + random.nextInt(4);
+                    switch (random.nextInt(8)) {
+                        case 0, 1 -> service.book(category, seats, guestName);
+                        case 2, 3 -> service.cancel(category, seats, guestName);
+                        case 4 -> service.addToWaitingList(category, guestName, seats);
+                        case 5 -> {
+                            Map<SeatCategory, Integer> group = new LinkedHashMap<>();
+                            group.put(category, seats);
+                            group.merge(categories.byId(random.nextInt(categories.size())), 1, Integer::sum);
+                            service.bookGroup(group, guestName);
+                        }
+                        case 6 -> {
+                            // The shared snapshot must not let a caller change what the others read
+                            Map<SeatCategory, Integer> availability = service.getAvailability();
+                            try {
+                                availability.put(category, -1);
+                                check(false, "The availability returned by the service can be modified");
+                            } catch (UnsupportedOperationException expected) {
+                                // the snapshot is unmodifiable
+                            }
+                        }
+                        default -> {
+                            for (List<Client> clients : service.getWaitingList(null).values()) {
+                                for (Client client : clients) {
+                                    check(client.getNumberOfSeats() > 0, "Waiting list entry without seats: " + client);
+                                }
+                                clients.clear();
+                            }
+                        }
+                    }
+                }
+            });
+            done.set(true);
+            observer.join();
+            checkService(service, dao, categories);
+        } finally {
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+    }
+
+    private void checkService(TheaterServiceImpl service, TheaterDAOImpl dao, SeatCategories categories) throws Exception {
+        Map<SeatCategory, Integer> availability = dao.getAvailability();
+        int[] booked = new int[categories.size()];
+        for (Client client : service.currentBookings()) {
+            booked[client.getSeatCategory().id()] += client.getNumberOfSeats();
+        }
+        int[] waiting = new int[categories.size()];
+        for (BookingEvent event : service.getLedger().events(0)) {
+            switch (event.type()) {
+                case WAITLISTED -> waiting[event.category().id()]++;
+                case PROMOTED -> waiting[event.category().id()]--;
+                default -> {
+                }
+            }
+        }
+        Map<SeatCategory, List<Client>> waitingList = service.getWaitingList(null);
+        for (SeatCategory category : categories.all()) {
+            int free = availability.get(category);
+            check(free + booked[category.id()] == SEATS_PER_CATEGORY, "Service conservation: " + category + " has "
+                    + free + " free and " + booked[category.id()] + " booked seats of " + SEATS_PER_CATEGORY);
+            check(service.getAvailabilityView().getAvailability().get(category) == free, "Ledger availability of "
+                    + category + " is " + service.getAvailabilityView().getAvailability().get(category)
+                    + ", the theater has " + free);
+            List<Client> clients = waitingList.getOrDefault(category, List.of());
+            check(clients.size() == waiting[category.id()], "Waiting list of " + category + " has " + clients.size()
+                    + " entries, the ledger has " + waiting[category.id()] + " waiting");
+            for (Client client : clients) {
+                check(client.getSeatCategory().equals(category), "Waiting list of " + category + " holds " + client);
+            }
+        }
+    }
+
+    private Theater scratchTheater(int seats) {
+        Map<SeatCategory, Integer> capacity = new LinkedHashMap<>();
+        for (SeatCategory category : config.categories().all()) {
+            capacity.put(category, seats);
+        }
+        return new Theater("Stress", config.categories(), config.prices(), capacity);
+    }
+
+    private void checkBounds(String name, Map<SeatCategory, Integer> availability, TheaterDAOImpl dao) {
+        for (Map.Entry<SeatCategory, Integer> entry : availability.entrySet()) {
+            int free = entry.getValue();
+            check(free >= -dao.getOverbookAllowance(entry.getKey()) && free <= SEATS_PER_CATEGORY,
+                    name + " oversell: " + entry.getKey() + " has " + free + " free seats");
+        }
+    }
+
+    private void printOutcomes(String name, Map<String, Integer> outcomes) {
+        out.println("  " + name + " outcomes (first,second): " + outcomes);
+    }
+
+    private void check(boolean condition, String failure) {
+        if (!condition && failures.size() < 20) {
+            failures.add(failure);
+        }
+    }
+
+    /**
+     Runs the workload on every thread, released together by a barrier, and waits for all of them to finish.
+     An exception thrown by the workload is a failure.
+     */
+    private void runThreads(Workload workload) throws InterruptedException {
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    workload.run(thread);
+                } catch (Exception e) {
+                    check(false, "Thread " + thread + " failed: " + e);
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     Runs two actors at the same moment and returns their results.
+     */
+    private boolean[] race(Actor first, Actor second) throws InterruptedException {
+        CyclicBarrier start = new CyclicBarrier(2);
+        boolean[] results = new boolean[2];
+        Thread other = new Thread(() -> {
+            try {
+                start.await();
+                results[1] = second.act();
+            } catch (Exception e) {
+                check(false, "Actor failed: " + e);
+            }
+        });
+        other.start();
+        try {
+            start.await();
+            results[0] = first.act();
+        } catch (Exception e) {
+            check(false, "Actor failed: " + e);
+        }
+        other.join();
+        return results;
+    }
+
+    private Thread observe(AtomicBoolean done, Check check) {
+        Thread observer = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    check.run();
+                } catch (Exception e) {
+                    check(false, "Observer failed: " + e);
+                }
+            }
+        }, "stress-observer");
+        observer.start();
+        return observer;
+    }
+
+    private interface Scenario {
+        void run() throws Exception;
+    }
+
+    private interface Workload {
+        void run(int thread) throws Exception;
+    }
+
+    private interface Actor {
+        boolean act() throws Exception;
+    }
+
+    private interface Check {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,52 @@
+package gr.uniwa.marou.model;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ The AvailabilityDelta record is the answer of the availability feed to a client that last saw a given version.
+ It holds the new number of available seats of only the seat categories that changed since that version, as two
+ parallel arrays of category ids and seat counts, which serialize to a few bytes per category.
+ A delta without categories means the availability has not been modified. A complete delta holds every category,
+ and replaces whatever the client knew, e.g. when the client is too far behind for the recent changes to be known.
+ @param version the version of the availability the client is up to date with after applying the delta
+ @param complete true if the delta holds every seat category, false if it holds only the changed ones
+ @param categoryIds the ids of the seat categories in the delta
+ @param seats the number of available seats of each seat category in the delta, in the same order as the ids
+ */
+public record AvailabilityDelta(long version, boolean complete, int[] categoryIds, int[] seats) implements Serializable {
+
+    /**
+     Returns whether the availability has changed since the version the client passed.
+     @return true if the delta holds no seat category
+     */
+    public boolean notModified() {
+        return categoryIds.length == 0;
+    }
+
+    /**
+     Returns the changes as a map from seat category to the new number of available seats.
+     @param categories the seat categories the ids refer to, as reported by the server
+     @return the changed seat categories, in the order of the delta
+     */
+    public Map<SeatCategory, Integer> changes(SeatCategories categories) {
+        Map<SeatCategory, Integer> changes = new LinkedHashMap<>();
+        for (int i = 0; i < categoryIds.length; i++) {
+            changes.put(categories.byId(categoryIds[i]), seats[i]);
+        }
+        return changes;
+    }
+
+    /**
+     Applies the delta to the availability a client has cached.
+     @param availability the cached availability, updated in place
+     @param categories the seat categories the ids refer to, as reported by the server
+     */
+    public void applyTo(Map<SeatCategory, Integer> availability, SeatCategories categories) {
+        if (complete) {
+            availability.clear();
+        }
+        availability.putAll(changes(categories));
+    }
+}
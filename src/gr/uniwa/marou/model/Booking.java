@@ -0,0 +1,23 @@
+package gr.uniwa.marou.model;
+
+import java.io.Serializable;
+
+/**
+ The Booking record is the compact, immutable form of a booking kept by the server.
+ The guest is identified by the id that the GuestDirectory assigned to their name, and since all the fields are final,
+ equality and hash codes stay the same for as long as the booking exists.
+ @param guestId the id of the guest in the GuestDirectory
+ @param category the seat category of the booked seats
+ @param numberOfSeats the number of booked seats
+ */
+public record Booking(int guestId, SeatCategory category, int numberOfSeats) implements Serializable {
+
+    /**
+     Converts this booking into a Client, resolving the guest name from the given directory.
+     @param guests the directory the guest id was assigned by
+     @return the Client describing this booking
+     */
+    public Client toClient(GuestDirectory guests) {
+        return new Client(guests.nameOf(guestId), numberOfSeats, category);
+    }
+}
@@ -0,0 +1,187 @@
+package gr.uniwa.marou.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ The BookingTable stores bookings in struct-of-arrays form: one primitive array for the guest ids, one for the
+ seat category ids, one for the seat counts and one for the amount paid, in cents, so a booking costs eighteen bytes
+ instead of a separate object with its own header and references.
+ Bookings keep the order in which they were added. The table is not thread-safe; callers must synchronize access.
+ */
+public class BookingTable {
+
+    private final SeatCategories categories;
+    private int[] guestIds;
+    private short[] categoryIds;
+    private int[] seats;
+    private long[] paidCents;
+    private int size;
+
+    /**
+     Constructs a new, empty BookingTable.
+     @param categories the seat categories the bookings refer to
+     @throws IllegalArgumentException if there are more categories than fit in a short id
+     */
+    public BookingTable(SeatCategories categories) {
+        if (categories.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many seat categories: " + categories.size());
+        }
+        this.categories = categories;
+        this.guestIds = new int[16];
+        this.categoryIds = new short[16];
+        this.seats = new int[16];
+        this.paidCents = new long[16];
+    }
+
+    /**
+     Appends a booking to the end of the table without creating a Booking object for it.
+     @param guestId the id of the guest
+     @param category the seat category of the booking
+     @param numberOfSeats the number of booked seats
+     @param amountCents the amount the guest paid for the seats, in cents
+     */
+    public void add(int guestId, SeatCategory category, int numberOfSeats, long amountCents) {
+        if (size == guestIds.length) {
+            int capacity = size * 2;
+            guestIds = Arrays.copyOf(guestIds, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            seats = Arrays.copyOf(seats, capacity);
+            paidCents = Arrays.copyOf(paidCents, capacity);
+        }
+        guestIds[size] = guestId;
+        categoryIds[size] = (short) category.id();
+        seats[size] = numberOfSeats;
+        paidCents[size] = amountCents;
+        size++;
+    }
+
+    /**
+     Returns the booking at the given position.
+     @param index the position of the booking
+     @return the booking at that position
+     @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Booking get(int index) {
+        return new Booking(guestId(index), category(index), numberOfSeats(index));
+    }
+
+    /**
+     Returns the guest id of the booking at the given position.
+     @param index the position of the booking
+     @return the id of the guest
+     */
+    public int guestId(int index) {
+        return guestIds[checkIndex(index)];
+    }
+
+    /**
+     Returns the seat category of the booking at the given position.
+     @param index the position of the booking
+     @return the seat category of the booking
+     */
+    public SeatCategory category(int index) {
+        return categories.byId(categoryIds[checkIndex(index)]);
+    }
+
+    /**
+     Returns the number of seats of the booking at the given position.
+     @param index the position of the booking
+     @return the number of booked seats
+     */
+    public int numberOfSeats(int index) {
+        return seats[checkIndex(index)];
+    }
+
+    /**
+     Returns the number of seats of the given seat category that the given guest has booked, over all their bookings.
+     @param guestId the id of the guest
+     @param category the seat category of the bookings
+     @return the number of booked seats, or 0 if the guest has no such booking
+     */
+    public int seatsOf(int guestId, SeatCategory category) {
+        short id = (short) category.id();
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            if (guestIds[i] == guestId && categoryIds[i] == id) {
+                total += seats[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     Returns the amount the given guest paid for the seats that take would take, without taking them.
+     @param guestId the id of the guest
+     @param category the seat category of the bookings
+     @param numberOfSeats the number of seats to refund
+     @return the amount paid for the seats, in cents
+     */
+    public long refundOf(int guestId, SeatCategory category, int numberOfSeats) {
+        return take(guestId, category, numberOfSeats, false);
+    }
+
+    /**
+     Takes seats of the given seat category from the bookings of the given guest, latest booking first, and removes
+     the bookings that have no seats left. Each seat is worth the price it was booked at.
+     @param guestId the id of the guest
+     @param category the seat category of the bookings
+     @param numberOfSeats the number of seats to take, more than the guest has booked taking all of them
+     @return the amount paid for the seats taken, in cents
+     */
+    public long take(int guestId, SeatCategory category, int numberOfSeats) {
+        return take(guestId, category, numberOfSeats, true);
+    }
+
+    private long take(int guestId, SeatCategory category, int numberOfSeats, boolean remove) {
+        short id = (short) category.id();
+        int taken = 0;
+        long cents = 0;
+        for (int i = size - 1; i >= 0 && taken < numberOfSeats; i--) {
+            if (guestIds[i] == guestId && categoryIds[i] == id) {
+                int fromBooking = Math.min(seats[i], numberOfSeats - taken);
+                // A booking is paid at a single price, so its amount divides evenly over its seats
+                long fromBookingCents = paidCents[i] / seats[i] * fromBooking;
+                taken += fromBooking;
+                cents += fromBookingCents;
+                if (!remove) {
+                    continue;
+                }
+                if (fromBooking == seats[i]) {
+                    remove(i);
+                } else {
+                    seats[i] -= fromBooking;
+                    paidCents[i] -= fromBookingCents;
+                }
+            }
+        }
+        return cents;
+    }
+
+    /**
+     Removes the booking at the given position, keeping the order of the remaining bookings.
+     @param index the position of the booking
+     @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int moved = size - index - 1;
+        System.arraycopy(guestIds, index + 1, guestIds, index, moved);
+        System.arraycopy(categoryIds, index + 1, categoryIds, index, moved);
+        System.arraycopy(seats, index + 1, seats, index, moved);
+        System.arraycopy(paidCents, index + 1, paidCents, index, moved);
+        size--;
+    }
+
+    /**
+     Returns the number of bookings in the table.
+     @return the number of bookings
+     */
+    public int size() {
+        return size;
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+}
@@ -7,19 +7,21 @@ import java.util.Objects;
 
 /**
  The Client class represents a booking made by a guest. It contains information about the guest name,
- the number of seats booked, and the seat type.
- This class provides methods to check for equality and calculate hash codes based on the guest name, number of seats
- booked, and the seat type.
+ the number of seats booked, and the seat category.
+ Clients are immutable, so the equality and hash codes based on the guest name, number of seats booked,
+ and the seat category never change while a Client is used as a key. The server keeps its bookings in the compact
+ Booking form and creates Clients only to send them to remote callers.
  */
 @Getter
-@Setter
 @ToString
 @AllArgsConstructor
 public class Client implements Serializable {
 
-    private String guestName;
-    private int numberOfSeats;
-    private SeatType seatType;
+    private static final long serialVersionUID = 2L;
+
+    private final String guestName;
+    private final int numberOfSeats;
+    private final SeatCategory seatCategory;
 
     /**
      Checks whether this Client object is equal to the given object.
@@ -32,7 +34,7 @@ public class Client implements Serializable {
         Client client = (Client) o;
         return numberOfSeats == client.numberOfSeats &&
                 Objects.equals(guestName, client.guestName) &&
-                seatType == client.seatType;
+                Objects.equals(seatCategory, client.seatCategory);
     }
 
     /**
@@ -40,16 +42,24 @@ public class Client implements Serializable {
      @return a hash code value for this object
      */
     public int hashCode() {
-        return Objects.hash(guestName, numberOfSeats, seatType);
+        return Objects.hash(guestName, numberOfSeats, seatCategory);
+    }
+
+    /**
+     Returns the SeatType of the booked seats, for callers that still use the enum.
+     @return the matching SeatType, or null if the seat category has no counterpart in the enum
+     */
+    public SeatType getSeatType() {
+        return seatCategory.toSeatType();
     }
 
     /**
-     Returns a notification message for a cancellation of a number of seats with a given seat type.
-     @param seatType the seat type of the cancelled seats.
+     Returns a notification message for a cancellation of a number of seats with a given seat category.
+     @param seatCategory the seat category of the cancelled seats.
      @param numberOfSeats the number of cancelled seats.
      @return the notification message for the cancellation.
      */
-    public String notifyCancellation(SeatType seatType, int numberOfSeats) {
-        return  "A cancellation has been made for " + numberOfSeats + " seat(s) with code: " + seatType + ".";
+    public String notifyCancellation(SeatCategory seatCategory, int numberOfSeats) {
+        return  "A cancellation has been made for " + numberOfSeats + " seat(s) with code: " + seatCategory + ".";
     }
 }
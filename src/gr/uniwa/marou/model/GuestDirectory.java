@@ -0,0 +1,78 @@
+package gr.uniwa.marou.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ The GuestDirectory interns guest names into dense numeric ids.
+ Bookings store the id of their guest instead of the name, so a guest with many bookings costs one String in total,
+ and bookings can be kept in primitive arrays. Ids are assigned in order starting from 0 and are never reused.
+ */
+public class GuestDirectory {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int size;
+
+    /**
+     Returns the id of the given guest name, assigning a new id if the name has not been seen before.
+     @param guestName the name of the guest
+     @return the id of the guest
+     @throws IllegalArgumentException if the guest name is null
+     */
+    public int intern(String guestName) {
+        if (guestName == null) {
+            throw new IllegalArgumentException("Guest name is required");
+        }
+        Integer id = ids.get(guestName);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(guestName);
+            if (id != null) {
+                return id;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            names[size] = guestName;
+            ids.put(guestName, size);
+            return size++;
+        }
+    }
+
+    /**
+     Returns the id of the given guest name without assigning a new one.
+     @param guestName the name of the guest
+     @return the id of the guest, or -1 if the name has not been interned
+     */
+    public int idOf(String guestName) {
+        Integer id = guestName == null ? null : ids.get(guestName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     Returns the guest name with the given id.
+     @param guestId the id of the guest
+     @return the name of the guest
+     @throws IllegalArgumentException if no guest has the given id
+     */
+    public String nameOf(int guestId) {
+        String[] names = this.names;
+        String name = guestId >= 0 && guestId < names.length ? names[guestId] : null;
+        if (name == null) {
+            throw new IllegalArgumentException("Unknown guest id: " + guestId);
+        }
+        return name;
+    }
+
+    /**
+     Returns the number of interned guest names.
+     @return the number of guests
+     */
+    public int size() {
+        return ids.size();
+    }
+}
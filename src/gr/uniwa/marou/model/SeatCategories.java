@@ -0,0 +1,123 @@
+package gr.uniwa.marou.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ The SeatCategories class is the immutable set of seat categories of a venue, with lookups by id, by code and by
+ SeatType. The SeatType enum maps onto the category with the same code, which keeps code written against the enum
+ working for venues whose configuration uses the classic seat types.
+ */
+public class SeatCategories implements Serializable {
+
+    private final List<SeatCategory> categories;
+    private final Map<String, SeatCategory> byCode;
+
+    /**
+     Constructs a new set of seat categories. The categories are numbered in the given order.
+     @param codes the codes of the categories
+     @param names the display names of the categories, in the same order as the codes
+     @throws IllegalArgumentException if there are no categories, or a code is blank or repeated
+     */
+    public SeatCategories(List<String> codes, List<String> names) {
+        if (codes.isEmpty() || codes.size() != names.size()) {
+            throw new IllegalArgumentException("At least one seat category with a name is required");
+        }
+        List<SeatCategory> categories = new ArrayList<>(codes.size());
+        Map<String, SeatCategory> byCode = new HashMap<>();
+        for (int id = 0; id < codes.size(); id++) {
+            String code = codes.get(id).trim().toUpperCase(Locale.ROOT);
+            if (code.isEmpty()) {
+                throw new IllegalArgumentException("Seat category codes must not be blank");
+            }
+            SeatCategory category = new SeatCategory(id, code, names.get(id));
+            if (byCode.put(code, category) != null) {
+                throw new IllegalArgumentException("Seat category " + code + " is configured twice");
+            }
+            categories.add(category);
+        }
+        this.categories = Collections.unmodifiableList(categories);
+        this.byCode = Collections.unmodifiableMap(byCode);
+    }
+
+    /**
+     Returns the category with the given id.
+     @param id the id of the category
+     @return the category
+     @throws IllegalArgumentException if there is no category with that id
+     */
+    public SeatCategory byId(int id) {
+        if (id < 0 || id >= categories.size()) {
+            throw new IllegalArgumentException("Invalid seat category id: " + id);
+        }
+        return categories.get(id);
+    }
+
+    /**
+     Returns the category with the given code, ignoring case.
+     @param code the code of the category
+     @return the category
+     @throws IllegalArgumentException if there is no category with that code
+     */
+    public SeatCategory byCode(String code) {
+        SeatCategory category = code == null ? null : byCode.get(code.trim().toUpperCase(Locale.ROOT));
+        if (category == null) {
+            throw new IllegalArgumentException("Invalid seat type: " + code);
+        }
+        return category;
+    }
+
+    /**
+     Returns the category a SeatType maps onto.
+     @param seatType the seat type
+     @return the category with the code of the seat type
+     @throws IllegalArgumentException if the seat type is null or the venue has no such category
+     */
+    public SeatCategory of(SeatType seatType) {
+        if (seatType == null || !byCode.containsKey(seatType.name())) {
+            throw new IllegalArgumentException("Invalid seatType: " + seatType);
+        }
+        return byCode.get(seatType.name());
+    }
+
+    /**
+     Returns whether the given category belongs to this set.
+     @param category the category to check
+     @return true if the category is one of these categories
+     */
+    public boolean contains(SeatCategory category) {
+        return category != null && category.id() < categories.size() && categories.get(category.id()).equals(category);
+    }
+
+    /**
+     Returns all the categories, ordered by id.
+     @return an unmodifiable list of the categories
+     */
+    public List<SeatCategory> all() {
+        return categories;
+    }
+
+    public int size() {
+        return categories.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof SeatCategories other && categories.equals(other.categories);
+    }
+
+    @Override
+    public int hashCode() {
+        return categories.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return categories.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package gr.uniwa.marou.model;
+
+import java.io.Serializable;
+
+/**
+ The SeatCategory record represents a category of seats of a venue, as loaded from the theater configuration.
+ Categories are numbered densely from 0 in the order they are configured, so per-category data can be kept in
+ arrays indexed by the id, just like the ordinal of the SeatType enum.
+ @param id the dense id of the category within its venue
+ @param code the short code of the category, for example "SA"
+ @param name the display name of the category, for example "Square - Zone A"
+ */
+public record SeatCategory(int id, String code, String name) implements Serializable {
+
+    /**
+     Returns the SeatType with the same code as this category, for callers that still use the enum.
+     @return the matching SeatType, or null if the category has no counterpart in the enum
+     */
+    public SeatType toSeatType() {
+        return SeatType.forCode(code);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,7 +1,8 @@
 package gr.uniwa.marou.model;
 
 /**
- An enum representing the different types of seats in a theater.
+ An enum representing the classic types of seats in a theater.
+ Venues may configure other seat categories as well; every SeatType maps onto the SeatCategory with the same code.
  */
 public enum SeatType {
     SA("Square - Zone A"),
@@ -16,6 +17,20 @@ public enum SeatType {
         this.name =name;
     }
 
+    /**
+     Returns the SeatType with the given code, ignoring case.
+     @param code the code of the seat type, for example "SA"
+     @return the matching SeatType, or null if there is none
+     */
+    public static SeatType forCode(String code) {
+        for (SeatType seatType : values()) {
+            if (seatType.name().equalsIgnoreCase(code)) {
+                return seatType;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         return name;
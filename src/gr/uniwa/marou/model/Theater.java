@@ -1,52 +1,50 @@
 package gr.uniwa.marou.model;
 
 import lombok.Getter;
-import lombok.Setter;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 /**
- The Theater class represents a theater with a set of seat types, prices and availability for each type.
+ The Theater class represents a theater with a set of seat categories, prices and availability for each category.
  It also contains the theater's name.
+ Prices and availability are kept in arrays indexed by the id of the seat category. The prices are held in an
+ array that is replaced as a whole when they change, so readers always see a consistent set of prices without locking.
+ A seat category may be overbooked by a number of seats, in which case its availability drops below zero by up to
+ that many seats; the overbooked seats are expected to be freed again by cancellations and no-shows.
+ Reads on the booking path do not allocate: the price of up to PRICED_SEATS seats of each category is computed when
+ the prices are set, and the snapshot of the availability is kept and handed out until a category changes.
  */
-@Getter
-@Setter
 public class Theater implements Serializable {
 
-    private final Map<SeatType, BigDecimal>prices;
-    private final Map<SeatType, Integer>availability;
+    /**
+     The largest number of seats whose total price is computed in advance for every seat category.
+     */
+    public static final int PRICED_SEATS = 16;
+
+    @Getter
+    private final SeatCategories categories;
+    private volatile BigDecimal[][] prices;
+    private final AtomicIntegerArray capacity;
+    private final AtomicIntegerArray availability;
+    private transient volatile AvailabilitySnapshot availabilitySnapshot;
+    private final AtomicIntegerArray overbooking;
 
+    @Getter
     private final String theaterName;
 
     /**
      Constructs a new Theater object with default values for prices, availability and name.
+     The seat categories, prices and availability are read from the theater_seats.csv file bundled with the application.
+     @throws IllegalStateException if the bundled file is missing or invalid
      */
     public Theater(){
-
-        prices = new HashMap<>();
-        availability = new HashMap<>();
-        this.theaterName = "MyTheater";
-
-        try (Scanner scanner =  new Scanner(Objects.requireNonNull(getClass().getResourceAsStream("theater_seats.csv")))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(",");
-                SeatType seatType = SeatType.valueOf(parts[0]);
-                BigDecimal price = new BigDecimal(parts[1]);
-                int availableSeats = Integer.parseInt(parts[2]);
-
-                prices.put(seatType, price);
-                availability.put(seatType, availableSeats);
-            }
-        } catch (Exception e) {
-            System.out.println("File Not Found " + e.getMessage());
-        }
+        this(TheaterConfig.loadDefault());
 
         /* Hardcoded approach
 
@@ -65,4 +63,190 @@ public class Theater implements Serializable {
         */
     }
 
+    /**
+     Constructs a new Theater object with the default name, and the seat categories, prices and capacity of the given
+     configuration. All the seats are available.
+     @param config the configuration of the theater
+     */
+    public Theater(TheaterConfig config){
+        this("MyTheater", config.categories(), config.prices(), config.capacity());
+    }
+
+    /**
+     Constructs a new Theater object with the given name, seat categories, prices and capacity. All the seats are
+     available.
+     @param theaterName the name of the theater
+     @param categories the seat categories of the theater
+     @param prices the price of each seat category
+     @param availability the number of seats of each seat category
+     @throws IllegalArgumentException if a seat category has no price or availability
+     */
+    public Theater(String theaterName, SeatCategories categories, Map<SeatCategory, BigDecimal> prices,
+                   Map<SeatCategory, Integer> availability){
+        this.categories = categories;
+        setPrices(prices);
+        this.capacity = new AtomicIntegerArray(categories.size());
+        this.availability = new AtomicIntegerArray(categories.size());
+        for (SeatCategory category : categories.all()) {
+            Integer seats = availability.get(category);
+            if (seats == null) {
+                throw new IllegalArgumentException("No availability for seat category " + category.code());
+            }
+            this.capacity.set(category.id(), seats);
+            this.availability.set(category.id(), seats);
+        }
+        this.overbooking = new AtomicIntegerArray(categories.size());
+        this.theaterName = theaterName;
+    }
+
+    /**
+     Returns the price of a seat of the given category.
+     @param category the seat category
+     @return the price of a seat
+     */
+    public BigDecimal getPrice(SeatCategory category){
+        return prices[category.id()][1];
+    }
+
+    /**
+     Returns the total price of the given number of seats of the given category.
+     @param category the seat category
+     @param numberOfSeats the number of seats
+     @return the price of a seat times the number of seats
+     */
+    public BigDecimal getPrice(SeatCategory category, int numberOfSeats){
+        BigDecimal[] categoryPrices = prices[category.id()];
+        if (numberOfSeats >= 0 && numberOfSeats < categoryPrices.length) {
+            return categoryPrices[numberOfSeats];
+        }
+        return categoryPrices[1].multiply(BigDecimal.valueOf(numberOfSeats));
+    }
+
+    /**
+     Replaces all the prices of the theater at once.
+     @param prices the new price of each seat category
+     @throws IllegalArgumentException if a seat category has no price
+     */
+    public void setPrices(Map<SeatCategory, BigDecimal> prices){
+        BigDecimal[][] next = new BigDecimal[categories.size()][];
+        for (SeatCategory category : categories.all()) {
+            BigDecimal price = prices.get(category);
+            if (price == null) {
+                throw new IllegalArgumentException("No price for seat category " + category.code());
+            }
+            BigDecimal[] categoryPrices = new BigDecimal[PRICED_SEATS + 1];
+            for (int seats = 0; seats <= PRICED_SEATS; seats++) {
+                categoryPrices[seats] = price.multiply(BigDecimal.valueOf(seats));
+            }
+            next[category.id()] = categoryPrices;
+        }
+        this.prices = next;
+    }
+
+    /**
+     Returns the number of seats of the given category. The seats booked are the capacity minus the available seats.
+     @param category the seat category
+     @return the capacity of the seat category
+     */
+    public int getCapacity(SeatCategory category){
+        return capacity.get(category.id());
+    }
+
+    /**
+     Sets the number of seats of the given category. Callers serialize the changes of a category, and change its
+     available seats by as much.
+     @param category the seat category
+     @param seats the new capacity
+     */
+    public void setCapacity(SeatCategory category, int seats){
+        capacity.set(category.id(), seats);
+    }
+
+    /**
+     Returns the number of available seats of the given category.
+     @param category the seat category
+     @return the number of available seats
+     */
+    public int getAvailable(SeatCategory category){
+        return availability.get(category.id());
+    }
+
+    /**
+     Sets the number of available seats of the given category. Callers serialize the changes of a category.
+     @param category the seat category
+     @param seats the new number of available seats
+     */
+    public void setAvailable(SeatCategory category, int seats){
+        availability.set(category.id(), seats);
+    }
+
+    /**
+     Returns the number of seats of the given category that may be sold beyond its capacity.
+     @param category the seat category
+     @return the number of seats the category may be overbooked by
+     */
+    public int getOverbookAllowance(SeatCategory category){
+        return overbooking.get(category.id());
+    }
+
+    /**
+     Sets the number of seats of the given category that may be sold beyond its capacity. Seats already overbooked
+     stay booked if the allowance shrinks; only new bookings are held to it.
+     @param category the seat category
+     @param seats the number of seats the category may be overbooked by
+     */
+    public void setOverbookAllowance(SeatCategory category, int seats){
+        overbooking.set(category.id(), seats);
+    }
+
+    /**
+     Returns a snapshot of the availability of every seat category, ordered by id.
+     The snapshot is shared by every caller until the availability of a category changes, so it cannot be modified.
+     It is checked against the current number of seats of each category, so changing the availability writes no
+     counter shared by all the categories.
+     @return an unmodifiable map that maps each seat category to its number of available seats
+     */
+    public Map<SeatCategory, Integer> getAvailability(){
+        AvailabilitySnapshot snapshot = availabilitySnapshot;
+        if (snapshot != null && snapshot.isCurrent(availability)) {
+            return snapshot.availability();
+        }
+        int[] seats = new int[categories.size()];
+        Map<SeatCategory, Integer> availability = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            seats[category.id()] = this.availability.get(category.id());
+            availability.put(category, seats[category.id()]);
+        }
+        availability = Collections.unmodifiableMap(availability);
+        availabilitySnapshot = new AvailabilitySnapshot(seats, availability);
+        return availability;
+    }
+
+    /**
+     Returns a snapshot of the prices of every seat category, ordered by id.
+     @return a map that maps each seat category to its price
+     */
+    public Map<SeatCategory, BigDecimal> getPrices(){
+        BigDecimal[][] current = prices;
+        Map<SeatCategory, BigDecimal> snapshot = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            snapshot.put(category, current[category.id()][1]);
+        }
+        return snapshot;
+    }
+
+    /**
+     The availability of every seat category at some point, both as seat counts indexed by id and as a map.
+     */
+    private record AvailabilitySnapshot(int[] seats, Map<SeatCategory, Integer> availability) {
+
+        boolean isCurrent(AtomicIntegerArray availability) {
+            for (int id = 0; id < seats.length; id++) {
+                if (seats[id] != availability.get(id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
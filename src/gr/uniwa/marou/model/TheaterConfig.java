@@ -0,0 +1,126 @@
+package gr.uniwa.marou.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ The TheaterConfig record holds the configurable part of a theater: its seat categories, and the price and the
+ capacity of every category.
+ A configuration is read from CSV lines of the form code,price,capacity[,name], for example "SA,45.00,100" or
+ "VIP,80.00,20,VIP Box". The categories are numbered in the order of the lines. The display name may be left out
+ for the classic seat types, which keep the names of the SeatType enum, and defaults to the code otherwise.
+ Unlike the original loader, a configuration that cannot be read or is invalid is reported with an exception
+ that names the offending line instead of being skipped silently.
+ @param categories the seat categories of the theater
+ @param prices the price of each seat category
+ @param capacity the total number of seats of each seat category
+ */
+public record TheaterConfig(SeatCategories categories, Map<SeatCategory, BigDecimal> prices,
+                            Map<SeatCategory, Integer> capacity) {
+
+    public static final String DEFAULT_RESOURCE = "theater_seats.csv";
+
+    public TheaterConfig {
+        prices = Collections.unmodifiableMap(new LinkedHashMap<>(prices));
+        capacity = Collections.unmodifiableMap(new LinkedHashMap<>(capacity));
+    }
+
+    /**
+     Reads the configuration bundled with the application.
+     @return the default configuration
+     @throws IllegalStateException if the bundled configuration is missing or invalid
+     */
+    public static TheaterConfig loadDefault() {
+        try (InputStream in = TheaterConfig.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("File Not Found " + DEFAULT_RESOURCE);
+            }
+            return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid " + DEFAULT_RESOURCE + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     Reads a configuration from a file.
+     @param file the CSV file to read
+     @return the configuration
+     @throws IOException if the file cannot be read
+     @throws IllegalArgumentException if the file is not a valid configuration
+     */
+    public static TheaterConfig load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     Parses a configuration from CSV lines. Blank lines are ignored, every seat category must be configured exactly
+     once, and at least one category is required.
+     @param lines the lines to parse
+     @return the configuration
+     @throws IllegalArgumentException if a line is malformed, a value is negative, a code is repeated, or there are
+     no categories
+     */
+    public static TheaterConfig parse(List<String> lines) {
+        List<String> codes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<BigDecimal> prices = new ArrayList<>();
+        List<Integer> capacity = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(",");
+            try {
+                if (parts.length != 3 && parts.length != 4) {
+                    throw new IllegalArgumentException("expected code,price,capacity[,name]");
+                }
+                String code = parts[0].trim().toUpperCase(Locale.ROOT);
+                if (code.isEmpty()) {
+                    throw new IllegalArgumentException("the code must not be blank");
+                }
+                BigDecimal price = new BigDecimal(parts[1].trim());
+                int seats = Integer.parseInt(parts[2].trim());
+                if (price.signum() < 0 || seats < 0) {
+                    throw new IllegalArgumentException("price and capacity must not be negative");
+                }
+                if (!seen.add(code)) {
+                    throw new IllegalArgumentException("seat type " + code + " is configured twice");
+                }
+                SeatType seatType = SeatType.forCode(code);
+                String name = parts.length == 4 && !parts[3].isBlank() ? parts[3].trim()
+                        : seatType != null ? seatType.toString() : code;
+                codes.add(code);
+                names.add(name);
+                prices.add(price);
+                capacity.add(seats);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + (i + 1) + " '" + line + "': " + e.getMessage(), e);
+            }
+        }
+        if (codes.isEmpty()) {
+            throw new IllegalArgumentException("no seat types are configured");
+        }
+        SeatCategories categories = new SeatCategories(codes, names);
+        Map<SeatCategory, BigDecimal> priceMap = new LinkedHashMap<>();
+        Map<SeatCategory, Integer> capacityMap = new LinkedHashMap<>();
+        for (SeatCategory category : categories.all()) {
+            priceMap.put(category, prices.get(category.id()));
+            capacityMap.put(category, capacity.get(category.id()));
+        }
+        return new TheaterConfig(categories, priceMap, capacityMap);
+    }
+}
@@ -0,0 +1,37 @@
+package gr.uniwa.marou.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ The ZoneSales record is a snapshot of the sales figures of a single seat category, as reported to remote clients.
+ @param seatCategory the seat category the figures are about
+ @param seatsSold the number of seats sold, including seats sold from the waiting list
+ @param seatsCancelled the number of seats given back by cancellations
+ @param cancellations the number of cancellations
+ @param revenue the revenue of the seat category, net of refunds
+ @param waitlisted the number of requests added to the waiting list
+ @param promoted the number of waiting list requests that were turned into bookings
+ @param seatsSoldLastHour the number of seats sold during the last hour
+ @param revenueLastHour the revenue of the seats sold during the last hour, net of refunds
+ */
+public record ZoneSales(SeatCategory seatCategory, long seatsSold, long seatsCancelled, long cancellations, BigDecimal revenue,
+                        long waitlisted, long promoted, long seatsSoldLastHour, BigDecimal revenueLastHour)
+        implements Serializable {
+
+    /**
+     Returns the share of waiting list requests that were turned into bookings.
+     @return the waiting list conversion rate, between 0 and 1, or 0 if nobody was added to the waiting list
+     */
+    public double waitlistConversion() {
+        return waitlisted == 0 ? 0 : (double) promoted / waitlisted;
+    }
+
+    /**
+     Returns the number of seats sold and not cancelled.
+     @return the net number of seats sold
+     */
+    public long netSeatsSold() {
+        return seatsSold - seatsCancelled;
+    }
+}